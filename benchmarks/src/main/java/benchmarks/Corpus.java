@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Input of the benchmarks: every file of `input-files` one after the other, repeated `scale` times.
+ * The directory is read from the `corpus.dir` property, by default `input-files` from the root of
+ * the repository or from `benchmarks`.
+ * The vocabulary doesn't grow with the scale, only the number of tokens does.
+ */
+public class Corpus {
+
+    private Corpus() { }
+
+    // Methods
+
+    /**
+     * Writes the corpus at `scale` to a new file in `directory` and returns it.
+     */
+    public static Path create(Path directory, int scale) throws IOException {
+        List<byte[]> files = new ArrayList<>();
+        for (Path file : listFiles()) {
+            files.add(Files.readAllBytes(file));
+        }
+
+        Path corpus = directory.resolve("corpus-" + scale + ".txt");
+        try (OutputStream out = Files.newOutputStream(corpus)) {
+            for (int i = 0; i < scale; ++i) {
+                for (byte[] file : files) {
+                    out.write(file);
+                    // Files don't share a word at their boundary
+                    out.write('\n');
+                }
+            }
+        }
+        return corpus;
+    }
+
+    /**
+     * Same as `create` but keeps the corpus in memory.
+     */
+    public static byte[] read(Path directory, int scale) throws IOException {
+        return Files.readAllBytes(create(directory, scale));
+    }
+
+    /**
+     * Deletes `directory` and everything in it, e.g. the temporary directory of a benchmark.
+     */
+    public static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) { return; }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted((a, b) -> b.compareTo(a)).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static List<Path> listFiles() throws IOException {
+        Path directory = Paths.get(System.getProperty("corpus.dir", "input-files"));
+        if (!Files.isDirectory(directory)) {
+            directory = Paths.get("..").resolve(directory);
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            List<Path> files = paths.filter(Files::isRegularFile)
+                .filter(path -> path.toString().endsWith(".txt"))
+                .sorted()
+                .collect(Collectors.toList());
+            if (files.isEmpty()) {
+                throw new IOException("No .txt file in " + directory.toAbsolutePath());
+            }
+            return files;
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import slave.CountTable;
+import slave.WhitespaceTokenizer;
+
+/**
+ * Counting the tokens of the corpus: the byte `CountTable` of the slave against a `HashMap` of
+ * decoded words. Tokens are found before the measure, so only the counting and the sorted
+ * output the map writes are timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CountTableBenchmark {
+
+    @Param({ "1", "16", "128" })
+    public int scale;
+
+    // Properties
+
+    private Path directory;
+
+    private ByteBuffer corpus;
+
+    // Start and end of each token in `corpus`
+    private int[] starts;
+
+    private int[] ends;
+
+    // Methods
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("counttable");
+        corpus = ByteBuffer.wrap(Corpus.read(directory, scale));
+
+        List<int[]> tokens = new ArrayList<>();
+        new WhitespaceTokenizer().tokenize(corpus, (buffer, start, end) -> tokens.add(new int[] { start, end }));
+        starts = tokens.stream().mapToInt(token -> token[0]).toArray();
+        ends = tokens.stream().mapToInt(token -> token[1]).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Corpus.delete(directory);
+    }
+
+    @Benchmark
+    public void countTable(Blackhole blackhole) throws IOException {
+        CountTable counts = new CountTable();
+        for (int i = 0; i < starts.length; ++i) {
+            counts.add(corpus, starts[i], ends[i], 1);
+        }
+        counts.forEachSorted((slab, offset, length, count) -> blackhole.consume(count));
+    }
+
+    @Benchmark
+    public void hashMap(Blackhole blackhole) {
+        Map<String, Long> counts = new HashMap<>();
+        byte[] bytes = corpus.array();
+        for (int i = 0; i < starts.length; ++i) {
+            String word = new String(bytes, starts[i], ends[i] - starts[i], StandardCharsets.UTF_8);
+            counts.merge(word, 1L, Long::sum);
+        }
+        counts.entrySet().stream()
+            .sorted(Map.Entry.comparingByKey())
+            .forEach(entry -> blackhole.consume(entry.getValue()));
+    }
+
+}
@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import slave.Combiner;
+import slave.RecordWriter;
+import slave.RunMerger;
+import slave.WhitespaceTokenizer;
+
+/**
+ * Merging of the sorted runs a reducer receives into its reduce file. The corpus is cut into
+ * `runs` parts, each counted into its own run file once per trial, so the runs share most keys
+ * like the shuffle files of different maps do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReduceBenchmark {
+
+    // Same as the combiner budget of the slave
+    private static final long memoryBudget = 64L * 1024 * 1024;
+
+    @Param({ "1", "16", "128" })
+    public int scale;
+
+    @Param({ "4", "32" })
+    public int runs;
+
+    // Properties
+
+    private Path directory;
+
+    private List<String> runFiles;
+
+    private String reduceFile;
+
+    // Methods
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("reduce");
+        reduceFile = directory.resolve("RM0.txt").toString();
+        runFiles = new ArrayList<>(runs);
+
+        List<Combiner> combiners = new ArrayList<>(runs);
+        for (int i = 0; i < runs; ++i) {
+            String runFile = directory.resolve("0-SH" + i + ".txt").toString();
+            runFiles.add(runFile);
+            combiners.add(new Combiner(runFile, memoryBudget / runs));
+        }
+
+        ByteBuffer corpus = ByteBuffer.wrap(Corpus.read(directory, scale));
+        int partSize = corpus.limit() / runs + 1;
+        new WhitespaceTokenizer().tokenize(corpus,
+            (buffer, start, end) -> combiners.get(start / partSize).add(buffer, start, end, 1));
+        for (Combiner combiner : combiners) {
+            combiner.finish();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Corpus.delete(directory);
+    }
+
+    @Benchmark
+    public long merge() throws IOException {
+        try (RecordWriter writer = new RecordWriter(reduceFile)) {
+            return RunMerger.merge(runFiles, writer::write);
+        }
+    }
+
+}
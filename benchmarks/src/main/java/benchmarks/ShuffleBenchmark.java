@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import slave.Combiner;
+import slave.RecordReader;
+import slave.WhitespaceTokenizer;
+
+/**
+ * Writing of the shuffle files of one map: its sorted map file is read and each record is routed
+ * to the combiner of its partition, as the slave does before sending the files to the reducers.
+ * The map file is made once per trial from the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShuffleBenchmark {
+
+    // Same as the combiner budget of the slave
+    private static final long memoryBudget = 64L * 1024 * 1024;
+
+    @Param({ "1", "16", "128" })
+    public int scale;
+
+    @Param({ "4", "16" })
+    public int partitions;
+
+    @Param({ "none", "lz4", "deflate" })
+    public String codec;
+
+    // Properties
+
+    private Path directory;
+
+    private String mapFile;
+
+    // Methods
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("shuffle");
+        mapFile = directory.resolve("UM0.txt").toString();
+
+        Combiner combiner = new Combiner(mapFile, memoryBudget);
+        new WhitespaceTokenizer().tokenize(ByteBuffer.wrap(Corpus.read(directory, scale)),
+            (buffer, start, end) -> combiner.add(buffer, start, end, 1));
+        combiner.finish();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Corpus.delete(directory);
+    }
+
+    @Benchmark
+    public long prepareShuffleFiles() throws IOException {
+        List<Combiner> combiners = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; ++i) {
+            String shuffleName = directory.resolve(i + "-SH0.txt").toString();
+            combiners.add(new Combiner(shuffleName, memoryBudget / partitions, codec));
+        }
+
+        try (RecordReader reader = new RecordReader(mapFile)) {
+            while (reader.next()) {
+                byte[] key = reader.getKeyBytes();
+                int offset = reader.getKeyOffset();
+                int length = reader.getKeyLength();
+                Combiner partition = combiners.get(Math.floorMod(hash(key, offset, length), partitions));
+                partition.add(reader.getKeyBuffer(), offset, offset + length, reader.getCount());
+            }
+        }
+
+        long records = 0;
+        for (Combiner combiner : combiners) {
+            combiner.finish();
+            records += combiner.getRecords();
+        }
+        return records;
+    }
+
+    // Hash of the slave, which decides the partition of a key
+    private static int hash(byte[] key, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            h = 31 * h + key[i];
+        }
+        return h;
+    }
+
+}
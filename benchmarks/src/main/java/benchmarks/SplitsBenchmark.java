@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import master.Splits;
+
+/**
+ * Splitting of the corpus by the master. With `shared` only the ranges are found; otherwise each
+ * range is also copied to its split file in the splits directory of the master, as before a job.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitsBenchmark {
+
+    @Param({ "1", "16", "128" })
+    public int scale;
+
+    @Param({ "65536", "1048576" })
+    public long splitSize;
+
+    @Param({ "true", "false" })
+    public boolean shared;
+
+    // Properties
+
+    private Path directory;
+
+    private String corpus;
+
+    // Methods
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("splits");
+        corpus = Corpus.create(directory, scale).toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Corpus.delete(directory);
+    }
+
+    @Benchmark
+    public int create() {
+        return Splits.create(corpus, splitSize, shared).getSplitsCount();
+    }
+
+}
@@ -0,0 +1,102 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import slave.Tokenizer;
+import slave.WhitespaceTokenizer;
+
+/**
+ * Tokenization of the corpus, counting the tokens: `Scanner` as the first versions of the map did,
+ * `String.split`, `StringTokenizer` and the byte tokenizer of the slave, which doesn't decode the input.
+ * The decoding of the text is part of the timed work of the `String` based ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Param({ "1", "16", "128" })
+    public int scale;
+
+    // Properties
+
+    private Path directory;
+
+    private byte[] corpus;
+
+    private final Tokenizer tokenizer = new WhitespaceTokenizer();
+
+    // Methods
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("tokenizer");
+        corpus = Corpus.read(directory, scale);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Corpus.delete(directory);
+    }
+
+    @Benchmark
+    public long scanner() {
+        long tokens = 0;
+        try (Scanner in = new Scanner(new String(corpus, StandardCharsets.UTF_8))) {
+            while (in.hasNext()) {
+                in.next();
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    @Benchmark
+    public long split() {
+        String text = new String(corpus, StandardCharsets.UTF_8).trim();
+        return text.isEmpty() ? 0 : text.split("\\s+").length;
+    }
+
+    @Benchmark
+    public long stringTokenizer() {
+        StringTokenizer in = new StringTokenizer(new String(corpus, StandardCharsets.UTF_8));
+        long tokens = 0;
+        while (in.hasMoreTokens()) {
+            in.nextToken();
+            tokens++;
+        }
+        return tokens;
+    }
+
+    @Benchmark
+    public long whitespaceTokenizer() throws IOException {
+        long[] tokens = { 0 };
+        tokenizer.tokenize(ByteBuffer.wrap(corpus), (buffer, start, end) -> tokens[0]++);
+        return tokens[0];
+    }
+
+}
@@ -1,8 +1,8 @@
 package clean;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 public class App {
 
@@ -20,6 +20,9 @@ public class App {
 
         App app = new App(connectionTester.getAvailableMachines());
         app.cleanAllMachines();
+        System.out.println("ssh connections\n" + SshConnections.describe());
+        // Cleaning ends the work on the machines, their master connections aren't needed anymore
+        SshConnections.closeAll();
 
         System.out.println("Finished cleaning");
     }
@@ -31,25 +34,16 @@ public class App {
     }
 
     private void cleanAllMachines() {
-        ExecutorService executor = Executors.newFixedThreadPool(10);
-        machines.stream()
-            .map(this::createCleanBuilderForMachine)
-            .map(pb -> new ProcessRunner(pb, 4000))
-            .map(runner -> executor.submit(runner))
-            .forEach(future -> {
-                try {
-                    future.get();
-                } catch (Exception e) {
-                    return;
-                }
-            });
-        // All futures completed
-        executor.shutdownNow();
+        List<Future<Boolean>> cleanups = machines.stream()
+            .map(machine -> ProcessExecutor.shared().submit(machine,
+                new ProcessRunner(createCleanBuilderForMachine(machine), 4000)))
+            .collect(Collectors.toList());
+        cleanups.forEach(ProcessExecutor::await);
     }
 
     private ProcessBuilder createCleanBuilderForMachine(String machine) {
         String login = Constants.username + "@" + machine;
-        return new ProcessBuilder(Constants.ssh, login, Constants.rm + " " + Constants.basedir);
+        return SshConnections.ssh(login, Constants.rm + " " + Constants.basedir);
     }
     
 }
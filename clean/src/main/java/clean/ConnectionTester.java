@@ -4,8 +4,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -51,29 +49,17 @@ public class ConnectionTester {
     }
 
     public void runTests(boolean verbose) {
-        ExecutorService executor = Executors.newFixedThreadPool(10);
-
         this.testedMachines = readFile();
         if (testedMachines.isEmpty()) { return; }
         
         // Map each machine to a boolean indicating whether it's available
         List<Future<Boolean>> runners = this.testedMachines.stream()
-            .map(machine -> createProcessRunner(machine, ConnectionTester.timeout))
-            .map(runner -> executor.submit(runner))
+            .map(machine -> ProcessExecutor.shared().submit(machine, createProcessRunner(machine, ConnectionTester.timeout)))
             .collect(Collectors.toList());
 
         List<Boolean> results = runners.stream()
-            .map(future -> {
-                try {
-                    return future.get();
-                } catch (Exception e) {
-                    return false;
-                }
-            })
+            .map(ProcessExecutor::await)
             .collect(Collectors.toList());
-        
-        // All threads will have finished due to future.get() above
-        executor.shutdownNow();
 
         // Zip results
         Map<String, Boolean> resultsMap = IntStream.range(0, testedMachines.size())
@@ -132,7 +118,7 @@ public class ConnectionTester {
     }
 
     private ProcessRunner createProcessRunner(String machine, long timeout) {
-        ProcessBuilder pb = new ProcessBuilder(Constants.ssh, machine, Constants.hostname);
+        ProcessBuilder pb = SshConnections.ssh(Constants.username + "@" + machine, Constants.hostname);
         ProcessRunner runner = new ProcessRunner(pb, timeout);
         
         runner.onComplete = process -> {
@@ -8,6 +8,15 @@ public class Constants {
     static final String scp = "scp";
     static final String mkdir = "mkdir -p";
     static final String hostname = "hostname";
+    // Threads running ssh and scp sessions, and sessions open to one machine at a time
+    static final int processThreads = 32;
+    static final int sessionsPerHost = 4;
+    // Master ssh connections, one per machine, kept outside of basedir so cleaning doesn't remove them
+    static final String sshControlDir = "/tmp/" + username + "-ssh/";
+    // Seconds a master connection stays up once its last session ended
+    static final int sshControlPersist = 600;
+    // Time given to open or close a master connection
+    static final long sshControlTimeout = 10000;
     static final String rm = "rm -rf";
 
     private Constants() { }
@@ -30,6 +30,7 @@ public class ProcessRunner implements Callable<Boolean> {
         
         Process p = null;
         try {
+            SshConnections.connect(processBuilder);
             p = processBuilder.start();
         } catch (IOException e) {
             System.err.println("Error starting process");
@@ -0,0 +1,170 @@
+package clean;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the ssh and scp commands sent to the machines so that they share one multiplexed
+ * connection per machine (OpenSSH `ControlMaster`) instead of each paying for a handshake.
+ * The first command started on a machine opens its master connection, or finds the one left by
+ * a previous run, which stays up for `Constants.sshControlPersist` seconds after the last command;
+ * the following commands and copies are sessions over it. Commands to a machine whose master
+ * couldn't be opened connect directly, as before.
+ * Sockets live in `Constants.sshControlDir`, outside of `basedir` so that cleaning a machine
+ * doesn't remove them.
+ */
+public class SshConnections {
+
+    // Host
+
+    private static class Host {
+
+        // Null until the first command looked for the master
+        Boolean open = null;
+
+        int handshakes = 0;
+
+        int multiplexed = 0;
+
+        int direct = 0;
+    }
+
+    // Set on the commands built here, names the machine whose connection they use
+    private static final String loginKey = "MAPREDUCE_SSH_LOGIN";
+
+    private static final Map<String, Host> hosts = new TreeMap<>();
+
+    private SshConnections() { }
+
+    // Methods
+
+    /**
+     * Command running `command` on `login` (`user@machine`).
+     */
+    public static ProcessBuilder ssh(String login, String command) {
+        return build(login, Constants.ssh, login, command);
+    }
+
+    /**
+     * Command copying `origin` to `destination`, one of them being a path on `login`.
+     */
+    public static ProcessBuilder scp(String login, String origin, String destination) {
+        return build(login, Constants.scp, origin, destination);
+    }
+
+    /**
+     * Opens the master connection of the machine `builder` runs on, unless it is already open.
+     * Called right before `builder` starts, so machines connect in parallel and only the commands
+     * to the same machine wait for each other. Does nothing for commands not built here.
+     */
+    public static void connect(ProcessBuilder builder) {
+        String login = builder.environment().get(loginKey);
+        if (login == null) { return; }
+
+        Host host;
+        synchronized (hosts) {
+            host = hosts.computeIfAbsent(login, key -> new Host());
+        }
+        synchronized (host) {
+            if (host.open == null) {
+                // A master left by a previous run, e.g. the deployment, is reused
+                host.open = run(Constants.ssh, "-o", "ControlPath=" + controlPath(), "-O", "check", login);
+            }
+            if (!host.open && host.handshakes == 0) {
+                host.handshakes++;
+                host.open = run(Constants.ssh, "-o", "ControlMaster=yes", "-o", "ControlPath=" + controlPath(),
+                    "-o", "ControlPersist=" + Constants.sshControlPersist, "-o", "ConnectTimeout=5", login, "true");
+                if (!host.open) {
+                    System.err.println("[SshConnections] Unable to open a master connection to " + login);
+                }
+            }
+            if (host.open) {
+                host.multiplexed++;
+            } else {
+                host.direct++;
+            }
+        }
+    }
+
+    /**
+     * Closes the master connections.
+     */
+    public static void closeAll() {
+        List<String> logins;
+        synchronized (hosts) {
+            logins = hosts.entrySet().stream()
+                .filter(entry -> Boolean.TRUE.equals(entry.getValue().open))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        }
+        for (String login : logins) {
+            run(Constants.ssh, "-o", "ControlPath=" + controlPath(), "-O", "exit", login);
+            synchronized (hosts) {
+                hosts.get(login).open = null;
+            }
+        }
+    }
+
+    /**
+     * Handshakes and sessions of each machine, e.g. `vbonemer@vm1: 1 handshake, 24 multiplexed, 0 direct`.
+     */
+    public static String describe() {
+        synchronized (hosts) {
+            return hosts.entrySet().stream()
+                .map(entry -> entry.getKey() + ": " + entry.getValue().handshakes + " handshake, "
+                    + entry.getValue().multiplexed + " multiplexed, " + entry.getValue().direct + " direct")
+                .collect(Collectors.joining("\n"));
+        }
+    }
+
+    private static ProcessBuilder build(String login, String program, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(program);
+        // Commands use the master connection if it exists and connect directly otherwise
+        command.addAll(List.of("-o", "ControlMaster=no", "-o", "ControlPath=" + controlPath()));
+        command.addAll(List.of(args));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().put(loginKey, login);
+        return builder;
+    }
+
+    private static String controlPath() {
+        // %C is a hash of the user, machine and port, short enough for a socket path
+        return Constants.sshControlDir + "%C";
+    }
+
+    /**
+     * Runs a control command and returns true if it exited with 0. Its output is discarded,
+     * the master connection it may leave behind keeps it open.
+     */
+    private static boolean run(String... command) {
+        File directory = new File(Constants.sshControlDir);
+        if (directory.mkdirs()) {
+            directory.setReadable(false, false);
+            directory.setWritable(false, false);
+            directory.setExecutable(false, false);
+            directory.setReadable(true, true);
+            directory.setWritable(true, true);
+            directory.setExecutable(true, true);
+        }
+        try {
+            Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            if (!process.waitFor(Constants.sshControlTimeout, TimeUnit.MILLISECONDS)) {
+                process.destroy();
+                return false;
+            }
+            return process.exitValue() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+}
@@ -4,7 +4,15 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import deploy.ProcessRunner.AlreadyRunningException;
@@ -25,7 +33,10 @@ public class App {
         connectionTester.runTests(false);
 
         App app = new App(connectionTester.getAvailableMachines());
+        App.createToken();
         app.deployJarToAll(jarFile);
+        System.out.println("ssh connections\n" + SshConnections.describe());
+        // The master connections stay up for the master to reuse, `clean` closes them
 
         System.out.println("Finished deploying");
     }
@@ -36,20 +47,36 @@ public class App {
         this.machines = machines;
     }
 
+    /**
+     * Writes a random token to `Constants.tokenFile` unless an earlier deployment did. The daemons
+     * only take commands from a master that sends it, and the master reads it from the same file.
+     * Only the user can read the file, and the copies keep its permissions.
+     */
+    private static void createToken() {
+        Path tokenFile = Paths.get(Constants.tokenFile);
+        if (Files.exists(tokenFile)) { return; }
+
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b));
+        }
+        try {
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            Files.write(tokenFile, token.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
     public void deployJarToAll(String jarFile) {
-        List<Thread> threads = machines.stream()
-            .map(machine -> createProcessRunner(jarFile, machine))
-            .map(runner -> new Thread(runner))
+        List<Future<Boolean>> copies = machines.stream()
+            .map(machine -> ProcessExecutor.shared().submit(machine, Executors.callable(createProcessRunner(jarFile, machine), true)))
             .collect(Collectors.toUnmodifiableList());
-        
-        threads.forEach(thread -> thread.start());
-        threads.forEach(thread -> {
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        });
+
+        copies.forEach(ProcessExecutor::await);
     }
 
     private ProcessRunner createProcessRunner(String jarFile, String machine) {
@@ -69,15 +96,19 @@ public class App {
         };
 
         String login = Constants.username + "@" + machine;
-        ProcessBuilder mkdirProcessBuilder = new ProcessBuilder(
-            Constants.ssh, login, Constants.mkdir + " " + Constants.basedir
+        ProcessBuilder mkdirProcessBuilder = SshConnections.ssh(
+            login, Constants.mkdir + " " + Constants.basedir
+        );
+        ProcessBuilder scpProcessBuilder = SshConnections.scp(
+            login, jarFile, login + ":" + Constants.basedir
         );
-        ProcessBuilder scpProcessBuilder = new ProcessBuilder(
-            Constants.scp, jarFile, login + ":" + Constants.basedir
+        ProcessBuilder scpTokenBuilder = SshConnections.scp(
+            login, Constants.tokenFile, login + ":" + Constants.remoteTokenFile
         );
         try {
             runner.addProcess(mkdirProcessBuilder, 10000);
             runner.addProcess(scpProcessBuilder, 10000);
+            runner.addProcess(scpTokenBuilder, 10000);
         } catch (AlreadyRunningException e) {
             // This should never actually happen
             e.printStackTrace();
@@ -5,6 +5,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.io.IOException;
@@ -54,7 +56,7 @@ public class ConnectionTester {
                 i -> testedMachines.get(i),
                 i -> false
             ));
-        List<Thread> threads = results.entrySet().stream()
+        List<Future<Boolean>> tests = results.entrySet().stream()
             .map(entry -> new AbstractMap.SimpleEntry<>(entry.getKey(), createTestMachine(entry.getKey(), 4000)))
             .map(entry -> {
                 ProcessRunner runner = new ProcessRunner();
@@ -68,20 +70,11 @@ public class ConnectionTester {
                 final String key = entry.getKey();
                 runner.onComplete = p -> results.replace(key, verifyProcessOutput(p, key));
 
-                return runner;
+                return ProcessExecutor.shared().submit(key, Executors.callable(runner, true));
             })
-            .map(runner -> new Thread(runner))
             .collect(Collectors.toList());
-        
-        threads.forEach(t -> t.start());
-        threads.forEach(t -> {
-            try {
-                t.join();
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(1);
-            }
-        });
+
+        tests.forEach(ProcessExecutor::await);
 
         if (verbose) {
             // Print each machine's status
@@ -141,7 +134,7 @@ public class ConnectionTester {
     }
 
     private ProcessBuilder createTestMachine(String name, long timeout) {
-        return new ProcessBuilder(Constants.ssh, name, Constants.hostname);
+        return SshConnections.ssh(Constants.username + "@" + name, Constants.hostname);
     }
 
     
@@ -8,6 +8,19 @@ public class Constants {
     static final String scp = "scp";
     static final String mkdir = "mkdir -p";
     static final String hostname = "hostname";
+    // Secret the daemons expect from the master, kept here outside of basedir so cleaning doesn't
+    // remove it, and copied to `remoteTokenFile` on every machine
+    static final String tokenFile = "/tmp/" + username + "-daemon.token";
+    static final String remoteTokenFile = basedir + "daemon.token";
+    // Threads running ssh and scp sessions, and sessions open to one machine at a time
+    static final int processThreads = 32;
+    static final int sessionsPerHost = 4;
+    // Master ssh connections, one per machine, kept outside of basedir so cleaning doesn't remove them
+    static final String sshControlDir = "/tmp/" + username + "-ssh/";
+    // Seconds a master connection stays up once its last session ended
+    static final int sshControlPersist = 600;
+    // Time given to open or close a master connection
+    static final long sshControlTimeout = 10000;
 
     private Constants() { }
 }
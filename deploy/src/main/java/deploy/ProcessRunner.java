@@ -48,6 +48,7 @@ public class ProcessRunner implements Runnable {
         
         Process p = null;
         try {
+            SshConnections.connect(pb);
             p = pb.start();
         } catch (IOException e) {
             System.err.println("Error starting process");
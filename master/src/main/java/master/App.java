@@ -5,13 +5,21 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.lang.Math;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -39,31 +47,129 @@ public class App {
     }
 
     private final static String jarName = "slave-0.1.jar";
-
-    private static String getMapFileFromSplit(String filePath) {
-        String[] components = filePath.split("/");
-        String name = components[components.length - 1].split("\\.")[0];
-        Scanner in = new Scanner(name);
-        in.useDelimiter("[^0-9]+");
-        int number = in.nextInt();
-        in.close();
-        return Constants.mapsDir + "UM" + number + ".txt";
-    }
+    private final static String sharedInputFlag = "--shared-input";
+    private final static String splitSizeFlag = "--split-size";
+    private final static String topFlag = "--top";
+    private final static String codecFlag = "--codec";
+    private final static String noResumeFlag = "--no-resume";
+    private final static String partitionsFlag = "--partitions";
+    private final static String orderFlag = "--order";
+    private final static String streamResultsFlag = "--stream-results";
+    private final static String metricsFlag = "--metrics";
+    private final static String mapThreadsFlag = "--map-threads";
 
     public static void log(String message, MeasuredTime t) {
         String ts = " in " + t.s + "s " + t.ms + "ms " + t.us + "us " + t.ns + "ns";
         System.err.println(message + ts);
     }
 
+    private static void writeMetrics(String fileName) {
+        try {
+            Path parent = Paths.get(fileName).toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Metrics.shared().write(fileName);
+            System.out.println("[App] Metrics written to " + fileName);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
     public static void main(String[] args) {
 
-        if (args.length != 2) {
-            System.err.println("Usage: java App <machines-file> <input-file>");
+        String usage = "Usage: java App <machines-file> <input-file> [" + sharedInputFlag + "] ["
+            + splitSizeFlag + " <bytes>] [" + topFlag + " <k>] [" + codecFlag + " none|deflate|lz4] ["
+            + partitionsFlag + " <n>] [" + orderFlag + " word|count] [" + streamResultsFlag + "] ["
+            + noResumeFlag + "] [" + metricsFlag + " <file.json|file.csv>] [" + mapThreadsFlag + " <n>]";
+        if (args.length < 2) {
+            System.err.println(usage);
             System.exit(1);
         }
 
         String machinesFileName = args[0];
         String inputFile = args[1];
+        // The input is at the same path on every machine (e.g. NFS), splits don't need to be copied
+        boolean sharedInput = false;
+        long splitSize = Constants.splitSize;
+        // Only the `topK` most frequent words are retrieved, 0 retrieves all of them
+        int topK = 0;
+        // Compression of the shuffle files, each worker logs the ratio and CPU time it got
+        String codec = Constants.shuffleCodec;
+        // Number of partitions reduced, 0 for `Constants.partitionsPerMachine` per machine
+        int partitionsCount = 0;
+        // Lines of the results file are sorted by word, or by decreasing count
+        String order = "word";
+        // The reduce files are merged while they are read from the workers instead of being copied first
+        boolean streamResults = false;
+        // An interrupted run of the same job is resumed from its manifest unless this is cleared
+        boolean resume = true;
+        // Metrics of the tasks, phases and machines, written as CSV if the name ends with .csv
+        String metricsFile = Constants.metricsFile;
+        // Threads of each map on the workers, 0 for one per processor of the worker
+        int mapThreads = 0;
+        for (int i = 2; i < args.length; ++i) {
+            if (args[i].equals(sharedInputFlag)) {
+                sharedInput = true;
+            } else if (args[i].equals(noResumeFlag)) {
+                resume = false;
+            } else if (args[i].equals(streamResultsFlag)) {
+                streamResults = true;
+            } else if (args[i].equals(metricsFlag) && i + 1 < args.length) {
+                metricsFile = args[++i];
+            } else if (args[i].equals(orderFlag) && i + 1 < args.length) {
+                order = args[++i];
+                if (!order.equals("word") && !order.equals("count")) {
+                    System.err.println("Illegal argument \"" + order + "\" for order.");
+                    System.exit(1);
+                }
+            } else if (args[i].equals(splitSizeFlag) && i + 1 < args.length) {
+                try {
+                    splitSize = Long.parseLong(args[++i]);
+                } catch (NumberFormatException e) {
+                    splitSize = -1;
+                }
+                if (splitSize <= 0) {
+                    System.err.println("Illegal argument \"" + args[i] + "\" for split size.");
+                    System.exit(1);
+                }
+            } else if (args[i].equals(codecFlag) && i + 1 < args.length) {
+                codec = args[++i];
+                if (!codec.equals("none") && !codec.equals("deflate") && !codec.equals("lz4")) {
+                    System.err.println("Illegal argument \"" + codec + "\" for codec.");
+                    System.exit(1);
+                }
+            } else if (args[i].equals(partitionsFlag) && i + 1 < args.length) {
+                try {
+                    partitionsCount = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    partitionsCount = -1;
+                }
+                if (partitionsCount <= 0) {
+                    System.err.println("Illegal argument \"" + args[i] + "\" for partitions.");
+                    System.exit(1);
+                }
+            } else if (args[i].equals(mapThreadsFlag) && i + 1 < args.length) {
+                try {
+                    mapThreads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    mapThreads = -1;
+                }
+                if (mapThreads <= 0) {
+                    System.err.println("Illegal argument \"" + args[i] + "\" for map threads.");
+                    System.exit(1);
+                }
+            } else if (args[i].equals(topFlag) && i + 1 < args.length) {
+                try {
+                    topK = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    System.err.println("Illegal argument \"" + args[i] + "\" for top.");
+                    System.exit(1);
+                }
+            } else {
+                System.err.println(usage);
+                System.exit(1);
+            }
+        }
 
         System.out.println("[Starting] Machines File: " + machinesFileName);
         System.out.println("[Starting] Input File: " + inputFile);
@@ -76,145 +182,294 @@ public class App {
             System.err.println("Unable to reach remote machines");
             System.exit(1);
         }
-        App app = new App(connectionTester.getAvailableMachines(), inputFile);
 
-        // MAP
+        String absolutePath = new File(inputFile).getAbsolutePath();
+        JobManifest manifest = JobManifest.open(Constants.manifestFile, absolutePath, splitSize, sharedInput, topK,
+            order, codec, partitionsCount, resume);
+        if (manifest.isResumed()) {
+            System.out.println("[App] Resuming the job recorded in " + Constants.manifestFile);
+        }
+        App app = new App(connectionTester.getAvailableMachines(), absolutePath, sharedInput, splitSize, topK, codec,
+            partitionsCount, order.equals("count"), streamResults, mapThreads, manifest);
 
-        System.out.println("[App] <Starting> MAP");
-        // System.out.println("[App] <Creating Threads> MAP");
-        List<ProcessRunner> runners = app.createMapRunners();
+        // START WORKERS
 
-        List<Thread> threads = runners.stream()
-            .map(runner -> new Thread(runner))
-            .collect(Collectors.toUnmodifiableList());
-        
+        System.out.println("[App] <Starting> WORKERS");
         long startTime = System.nanoTime();
 
-        // System.out.println("[App] <Starting Threads> MAP");
-        threads.forEach(thread -> thread.start());
-        // System.out.println("[App] <Joining Threads> MAP");
-        threads.forEach(thread -> {
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        });
+        app.startWorkers();
 
         long endTime = System.nanoTime();
         long duration = (endTime - startTime);
         MeasuredTime mt = new MeasuredTime(duration);
-        
-        App.log("MAP FINISHED", mt);
-        // System.out.println("[App] <Done> MAP");
 
-        // SHUFFLE
+        App.log("WORKERS STARTED", mt);
+        Metrics.shared().recordStage("WORKERS", duration);
 
-        System.out.println("[App] <Starting> SHUFFLE");
-        // System.out.println("[App] <Creating Threads> SHUFFLE");
+        // MAP, SHUFFLE AND REDUCE
 
-        runners = app.createShuffleRunners();
-
-        threads = runners.stream()
-            .map(runner -> new Thread(runner))
-            .collect(Collectors.toUnmodifiableList());
-        
+        System.out.println("[App] <Starting> PIPELINE");
         startTime = System.nanoTime();
 
-        // System.out.println("[App] <Starting Threads> SHUFFLE");
-        threads.forEach(thread -> thread.start());
-        // System.out.println("[App] <Joining Threads> SHUFFLE");
-        threads.forEach(thread -> {
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        });
-        
+        // Machines take the next split as soon as they are done with the previous one,
+        // each split is shuffled as soon as its own map is done, and each reducer merges
+        // the runs of its partition while they arrive and is fetched once done.
+        // Failed tasks are retried, on other machines if theirs died
+        Scheduler scheduler = new Scheduler();
+        app.submitMapSlots(scheduler);
+        app.submitReduces(scheduler);
+        boolean success = scheduler.awaitAll();
+        scheduler.shutdown();
 
         endTime = System.nanoTime();
         duration = (endTime - startTime);
         mt = new MeasuredTime(duration);
-        
-        App.log("SHUFFLE FINISHED", mt);
-        // System.out.println("[App] <Done> SHUFFLE");
-
-        // REDUCE
 
-        System.out.println("[App] <Starting> REDUCE");
-        // System.out.println("[App] <Creating Threads> REDUCE");
-        runners = app.createReduceRunners();
-
-        threads = runners.stream()
-            .map(runner -> new Thread(runner))
-            .collect(Collectors.toUnmodifiableList());
-        
-        startTime = System.nanoTime();
+        App.log("PIPELINE FINISHED", mt);
+        Metrics.shared().recordStage("PIPELINE", duration);
 
-        // System.out.println("[App] <Starting Threads> REDUCE");
-        threads.forEach(thread -> thread.start());
-        // System.out.println("[App] <Joining Threads> REDUCE");
-        threads.forEach(thread -> {
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        });
-
-        endTime = System.nanoTime();
-        duration = (endTime - startTime);
-        mt = new MeasuredTime(duration);
-        
-        App.log("REDUCE FINISHED", mt);
-        // System.out.println("[App] <Done> REDUCE");
+        if (!success) {
+            System.err.println("Job failed");
+            app.stopWorkers();
+            manifest.close();
+            System.out.println("[App] ssh connections\n" + SshConnections.describe());
+            App.writeMetrics(metricsFile);
+            System.exit(1);
+        }
 
         // RETRIEVE
 
         System.out.println("[App] <Starting> RETRIEVE");
-        // System.out.println("[App] <Creating Threads> RETRIEVE");
-        runners = app.createRetrieveResultsRunners();
-
-        threads = runners.stream()
-            .map(runner -> new Thread(runner))
-            .collect(Collectors.toUnmodifiableList());
-        
         startTime = System.nanoTime();
 
-        // System.out.println("[App] <Starting Threads> RETRIEVE");
-        threads.forEach(thread -> thread.start());
-        // System.out.println("[App] <Joining Threads> RETRIEVE");
-        threads.forEach(thread -> {
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        });
-
         System.out.println("[App] <Merging files> RETRIEVE");
-        app.createResultsFile();
+        if (topK > 0) {
+            app.createTopResultsFile();
+        } else {
+            app.createResultsFile();
+        }
 
         endTime = System.nanoTime();
         duration = (endTime - startTime);
         mt = new MeasuredTime(duration);
         
         App.log("RETRIEVE FINISHED", mt);
+        Metrics.shared().recordStage("RETRIEVE", duration);
         // System.out.println("[App] <Done> RETRIEVE");
 
-        // app.printResults();
+        manifest.recordDone();
+        manifest.close();
+
+        app.stopWorkers();
+        System.out.println("[App] ssh connections\n" + SshConnections.describe());
+        App.writeMetrics(metricsFile);
+
+        if (topK > 0) {
+            app.printResults();
+        }
         System.out.println("[Stopping]");
     }
 
     private List<String> machines;
     private List<String> usedMachines = new ArrayList<String>();
+    // Available machines left over by the splits, they only run backup attempts of slow maps
+    // and retries, unless none of the used machines is left to take the queued splits
+    private List<String> spareMachines = new ArrayList<String>();
+    // Used and spare machines whose daemon is running
+    private List<String> workerMachines = new ArrayList<String>();
+    // Machines whose daemon stopped answering, they don't get tasks anymore
+    private Set<String> deadMachines = new HashSet<>();
+    // Machine reducing each partition, a machine reduces several of them
+    // and a partition moves to another machine when its machine dies
+    private List<String> reducers = new ArrayList<String>();
+    private int nextMachine = 0;
+    private Map<String, WorkerClient> workers = new HashMap<>();
 
     private Splits splits;
 
-    private App(List<String> machines, String filePath) {
+    // Progress of the job, kept on disk so that it can be resumed
+    private final JobManifest manifest;
+
+    private final int topK;
+
+    private final String codec;
+
+    private final boolean byCount;
+
+    private final boolean streamResults;
+
+    private final int mapThreads;
+
+    private final List<MapTask> mapTasks = new ArrayList<>();
+
+    private int remainingMaps;
+
+    private boolean mapFailed = false;
+
+    // Machine of each reduce task running, by task id, cancelled if a split fails
+    private final Map<String, String> runningReduces = new HashMap<>();
+
+    // Durations of the winning attempts, against which stragglers are spotted
+    private long finishedMapsDuration = 0;
+
+    private int finishedMaps = 0;
+
+    private App(List<String> machines, String filePath, boolean sharedInput, long splitSize, int topK,
+            String codec, int partitionsCount, boolean byCount, boolean streamResults, int mapThreads,
+            JobManifest manifest) {
         this.machines = machines;
-        this.splits = Splits.create(filePath, machines.size());
+        this.mapThreads = mapThreads;
+        this.topK = topK;
+        this.codec = codec;
+        this.byCount = byCount;
+        // Top words are small enough to be copied
+        this.streamResults = streamResults && topK == 0;
+        this.manifest = manifest;
+        if (manifest.getOffsets() != null) {
+            this.splits = Splits.restore(filePath, splitSize, sharedInput, manifest.getOffsets(), manifest.getLengths());
+        } else {
+            this.splits = Splits.create(filePath, splitSize, sharedInput);
+            manifest.recordSplits(splits.getOffsets(), splits.getLengths());
+        }
+        this.usedMachines = machines.subList(0, Math.min(splits.getSplitsCount(), machines.size()));
+        this.spareMachines = machines.subList(usedMachines.size(),
+            Math.min(machines.size(), usedMachines.size() + Constants.speculativeSpareMachines));
+        // A resumed job keeps its partitions, and with them the runs its reducers already received
+        List<String> partitions = manifest.getPartitions();
+        if (partitions.isEmpty()) {
+            int count = partitionsCount > 0 ? partitionsCount : Constants.partitionsPerMachine * usedMachines.size();
+            Partitions sample = Partitions.sample(filePath, count);
+            partitions = sample.assign(usedMachines);
+            System.out.println("[App] " + count + " partitions, estimated share: " + sample.describe(partitions));
+        }
+        this.reducers.addAll(partitions);
+    }
+
+    // Workers
+
+    /**
+     * Launches the slave daemon on every used and spare machine and opens one connection to each of them.
+     * Every phase is then sent through that connection instead of starting a new JVM over ssh.
+     * Unless the job is resumed, the files an earlier job left on the workers are removed first:
+     * a reducer takes any run of its partition it finds, and an old run would count for the new split.
+     */
+    private void startWorkers() {
+        String usedMachinesFileName = createUsedMachinesFile();
+        final String clear = "rm -rf " + String.join(" ", Constants.mapsDir, Constants.shufflesDir,
+            Constants.receivedShufflesDir, Constants.mergesDir, Constants.reducesDir, Constants.topsDir);
+        List<String> startedMachines = Stream.of(usedMachines, spareMachines, reducers)
+            .flatMap(List::stream)
+            .filter(machines::contains)
+            .distinct()
+            .collect(Collectors.toUnmodifiableList());
+        List<Future<Boolean>> launches = startedMachines.stream()
+            .map(machine -> {
+                final String login = Constants.username + "@" + machine;
+                final String mkdir = Constants.mkdir + " " + Constants.basedir;
+                ProcessBuilder mkdirBuilder = SshConnections.ssh(login, mkdir);
+                ProcessBuilder scpMachinesBuilder = SshConnections.scp(
+                    login, usedMachinesFileName, login + ":" + Constants.machinesFile
+                );
+
+                final String cmd1 = Constants.cd + " " + Constants.basedir;
+                // The daemon listens on the address the other machines know it by
+                final String runJar = mapThreads > 0
+                    ? Constants.java + " -D" + Constants.mapThreadsProperty + "=" + mapThreads + " -jar"
+                    : Constants.runJar;
+                final String cmd2 = "nohup " + runJar + " " + jarName + " 4 " + Constants.daemonPort
+                    + " " + machine + " > " + Constants.daemonLog + " 2>&1 < /dev/null &";
+                final String command = cmd1 + "; " + cmd2;
+                ProcessBuilder execBuilder = SshConnections.ssh(login, command);
+
+                ProcessRunner runner = new ProcessRunner();
+                try {
+                    if (!manifest.isResumed()) {
+                        runner.addProcess(SshConnections.ssh(login, clear), 10000);
+                    }
+                    runner.addProcess(mkdirBuilder, 10000);
+                    runner.addProcess(scpMachinesBuilder, 10000);
+                    runner.addProcess(execBuilder, 10000);
+                } catch (AlreadyRunningException e) {
+                    System.err.println("This should never happen");
+                    System.exit(1);
+                }
+                return runner.submit(machine, "START");
+            })
+            .collect(Collectors.toUnmodifiableList());
+        // Machines that failed to launch are left out when connecting
+        launches.forEach(ProcessExecutor::await);
+
+        for (String machine : startedMachines) {
+            try {
+                workers.put(machine, WorkerClient.connect(machine, Constants.daemonPort, 40));
+                workerMachines.add(machine);
+            } catch (Exception e) {
+                System.err.println("Unable to connect to the worker on " + machine);
+                e.printStackTrace();
+            }
+        }
+        if (workers.isEmpty()) {
+            System.err.println("No worker started");
+            System.exit(1);
+        }
+
+        // Partitions of the machines that didn't start go to the others,
+        // unless they were reduced and fetched by an earlier run
+        for (int p = 0; p < reducers.size(); ++p) {
+            if (isReduced(p)) {
+                reducers.set(p, manifest.getReduceMachine(p));
+            } else if (!workers.containsKey(reducers.get(p))) {
+                reducers.set(p, pickMachine(List.of()));
+            }
+            manifest.recordPartition(p, reducers.get(p));
+        }
+    }
+
+    /**
+     * Checks that the daemon on `machine` still answers, and remembers it if it doesn't.
+     */
+    private boolean isAlive(String machine) {
+        if (isDead(machine)) { return false; }
+        if (workers.get(machine).isAlive()) { return true; }
+        synchronized (this) {
+            if (deadMachines.add(machine)) {
+                System.err.println("[App] " + machine + " stopped answering, it won't get tasks anymore");
+            }
+        }
+        return false;
+    }
+
+    private synchronized boolean isDead(String machine) {
+        return deadMachines.contains(machine);
+    }
+
+    /**
+     * Picks a live machine for a task leaving `excluded`, in turns so that retries spread out.
+     * Falls back to the excluded machines that are still alive, and returns null if none is.
+     */
+    private synchronized String pickMachine(Collection<String> excluded) {
+        List<String> alive = workerMachines.stream()
+            .filter(machine -> !deadMachines.contains(machine))
+            .collect(Collectors.toList());
+        List<String> candidates = alive.stream()
+            .filter(machine -> !excluded.contains(machine))
+            .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            candidates = alive;
+        }
+        if (candidates.isEmpty()) { return null; }
+        return candidates.get(nextMachine++ % candidates.size());
+    }
+
+    private void stopWorkers() {
+        workers.forEach((machine, worker) -> {
+            if (isDead(machine)) {
+                worker.close();
+            } else {
+                worker.shutdown();
+            }
+        });
+        workers.clear();
     }
 
     private String createUsedMachinesFile() {
@@ -247,210 +502,545 @@ public class App {
         return filePath;
     }
 
-    private List<ProcessRunner> createMapRunners() {
-        ArrayList<ProcessRunner> runners = new ArrayList<>(splits.getSplitsCount());
-        this.usedMachines = machines.subList(0, Math.min(splits.getSplitsCount(), machines.size()));
-        String usedMachinesFileName = createUsedMachinesFile();
+    /**
+     * Starts `Constants.mapSlotsPerMachine` slots on every machine, see `runMapSlot`.
+     */
+    private void submitMapSlots(Scheduler scheduler) {
+        ConcurrentLinkedQueue<MapTask> pendingTasks = new ConcurrentLinkedQueue<>();
+        List<MapTask> restoredTasks = new ArrayList<>();
         for (int i = 0; i < splits.getSplitsCount(); ++i) {
-            final int machineIndex = i % machines.size();
-            final String machine = machines.get(machineIndex);
-            final String login = Constants.username + "@" + machine;
-            final String mkdir = Constants.mkdir + " " + Constants.splitDir;
-            final String localFile = splits.getFileForSplit(i);
-            final String[] comps = localFile.split("/");
-            final String name = comps[comps.length - 1];
-            final String splitFile = Constants.splitDir + name;
-
-            ProcessBuilder mkdirBuilder = new ProcessBuilder(Constants.ssh, login, mkdir);
-            ProcessBuilder scpSplitBuilder = new ProcessBuilder(
-                Constants.scp, localFile, login + ":" + splitFile
-            );
-            ProcessBuilder scpMachinesBuilder = new ProcessBuilder(
-                Constants.scp, usedMachinesFileName, login + ":" + Constants.machinesFile
-            );
-            
-            final String cmd1 = Constants.cd + " " + Constants.basedir;
-            final String cmd2 = Constants.runJar + " " + jarName + " 0 " + splitFile;
-            final String command = cmd1 + "; " + cmd2;
-            ProcessBuilder execBuilder = new ProcessBuilder(Constants.ssh, login, command);
-            
-            // DEBUG
-            String id = "MAP"+ConnectionTester.createNextId();
-            mkdirBuilder.environment().put(ConnectionTester.IDKEY, id + " - mkdir");
-            scpSplitBuilder.environment().put(ConnectionTester.IDKEY, id + " - scp splits");
-            scpMachinesBuilder.environment().put(ConnectionTester.IDKEY, id + " - scp machines");
-            execBuilder.environment().put(ConnectionTester.IDKEY, id + " - exec");
-            //
+            MapTask task = new MapTask(i);
+            mapTasks.add(task);
+            String mapper = manifest.getMapMachine(i);
+            if (mapper != null && workers.containsKey(mapper)) {
+                task.restore(mapper);
+                restoredTasks.add(task);
+            } else {
+                pendingTasks.add(task);
+            }
+        }
+        remainingMaps = pendingTasks.size();
+        if (!restoredTasks.isEmpty()) {
+            System.out.println("[App] " + restoredTasks.size() + " splits were mapped by an earlier run");
+        }
 
-            ProcessRunner runner = new ProcessRunner();
+        for (MapTask task : restoredTasks) {
+            scheduler.submit("RESUME MAP " + task.split, () -> resumeMap(scheduler, task));
+        }
+
+        for (String machine : workerMachines) {
+            for (int slot = 0; slot < Constants.mapSlotsPerMachine; ++slot) {
+                scheduler.submit("MAP SLOT " + machine + "/" + slot, () -> runMapSlot(scheduler, pendingTasks, machine));
+            }
+        }
+    }
+
+    /**
+     * Maps splits on `machine` until every split is mapped. The slot of a used machine takes the next
+     * split from `pendingTasks`, maps it and hands its shuffle to the scheduler before taking another
+     * one, so faster machines end up processing more splits. Once the queue is empty, it backs up the
+     * stragglers. Spare machines only back up stragglers, and take queued splits once no used machine
+     * is alive. The slot stops if its machine dies.
+     */
+    private void runMapSlot(Scheduler scheduler, ConcurrentLinkedQueue<MapTask> pendingTasks, String machine) {
+        final boolean spare = !usedMachines.contains(machine);
+        while (!areMapsOver() && !isDead(machine)) {
+            MapTask task = spare && hasLiveUsedMachine() ? null : pendingTasks.poll();
+            if (task == null) {
+                task = findStraggler(machine);
+            }
+            if (task != null) {
+                runMapAttempt(scheduler, task, machine);
+                continue;
+            }
             try {
-                runner.addProcess(mkdirBuilder, Integer.MAX_VALUE);
-                runner.addProcess(scpSplitBuilder, Integer.MAX_VALUE);
-                runner.addProcess(scpMachinesBuilder, Integer.MAX_VALUE);
-                runner.addProcess(execBuilder, Integer.MAX_VALUE);
-            } catch (AlreadyRunningException e) {
-                System.err.println("This should never happen");
-                System.exit(1);
+                Thread.sleep(Constants.speculationInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
-            runners.add(runner);
         }
+    }
 
-        return runners;
+    private boolean hasLiveUsedMachine() {
+        return usedMachines.stream().anyMatch(machine -> workers.containsKey(machine) && !isDead(machine));
     }
 
-    // Shuffle
+    /**
+     * Shuffles the map file that an earlier run left for the split of `task` to the partitions
+     * that didn't receive it yet. The split is mapped again if the file is gone.
+     */
+    private void resumeMap(Scheduler scheduler, MapTask task) {
+        final int i = task.split;
+        final String machine = task.getWinner();
+        final String login = Constants.username + "@" + machine;
+        final String mapFile = Constants.mapsDir + "UM" + i + ".bin";
+
+        ProcessRunner runner = new ProcessRunner();
+        try {
+            runner.addProcess(SshConnections.ssh(login, "test -f " + mapFile), 10000);
+        } catch (AlreadyRunningException e) {
+            System.err.println("This should never happen");
+            System.exit(1);
+        }
+        if (!runner.execute(machine, "CHECK " + i) || !isAlive(machine)) {
+            System.err.println("[App] The output of MAP " + i + " is no longer on " + machine);
+            task.lose(machine);
+            mapLost();
+            retryMap(scheduler, task);
+            return;
+        }
+        for (int p = 0; p < reducers.size(); ++p) {
+            if (!isReduced(p) && !manifest.isShuffled(i, p)) {
+                runShuffle(scheduler, task, machine, -1);
+                return;
+            }
+        }
+    }
 
-    private List<ProcessRunner> createShuffleRunners() {
-        ArrayList<ProcessRunner> runners = new ArrayList<>(splits.getSplitsCount());
-        for (int i = 0; i < usedMachines.size(); ++i) {
-            // For each machine
-            // Run jar with 1 and map filename
-            final String machine = usedMachines.get(i);
-            final String login = Constants.username + "@" + machine;
-
-            final String localFile = splits.getFileForSplit(i);
-            final String[] comps = localFile.split("/");
-            final String name = comps[comps.length - 1];
-            final String splitFile = Constants.splitDir + name;
-            final String mapFile = App.getMapFileFromSplit(splitFile);
-            
-            final String cmd1 = Constants.cd + " " + Constants.basedir;
-            final String cmd2 = Constants.runJar + " " + jarName + " 1 " + mapFile;
-            final String command = cmd1 + "; " + cmd2;
-            ProcessBuilder execBuilder = new ProcessBuilder(Constants.ssh, login, command);
-            
-            String id = "SHUFFLE"+ConnectionTester.createNextId();
-            execBuilder.environment().put(ConnectionTester.IDKEY, id + " - exec");
+    /**
+     * Returns the map running for the longest time past `Constants.speculativeSlowdown` times the
+     * average duration of the finished maps, or null. Maps are compared on elapsed time only, the
+     * daemon doesn't report how far along a map is.
+     */
+    private MapTask findStraggler(String machine) {
+        long threshold;
+        synchronized (this) {
+            if (finishedMaps == 0) { return null; }
+            threshold = Math.max((long) (Constants.speculativeSlowdown * finishedMapsDuration / finishedMaps),
+                Constants.speculativeMinRuntime * 1000000);
+        }
 
-            ProcessRunner runner = new ProcessRunner();
-            try {
-                runner.addProcess(execBuilder, Integer.MAX_VALUE);
-            } catch (AlreadyRunningException e) {
-                System.err.println("This should never happen");
-                System.exit(1);
+        MapTask straggler = null;
+        long longest = threshold;
+        for (MapTask task : mapTasks) {
+            if (!task.canSpeculate() || task.isRunningOn(machine)) { continue; }
+            long elapsed = task.getElapsed();
+            if (elapsed > longest) {
+                straggler = task;
+                longest = elapsed;
             }
-            runners.add(runner);
         }
+        return straggler;
+    }
+
+    /**
+     * Maps the split of `task` on `machine`, as its first attempt, a retry or a backup of a straggler.
+     * Only the first attempt to succeed is shuffled, the others are cancelled. A split left without
+     * running attempt after a failure is retried.
+     */
+    private void runMapAttempt(Scheduler scheduler, MapTask task, String machine) {
+        final int i = task.split;
+        MapTask.Attempt attempt = task.start(machine);
+        if (attempt == null) { return; }
+        if (attempt.backup) {
+            System.err.println("[App] MAP " + i + " is slow, starting a backup attempt on " + machine);
+        }
+
+        boolean success = runMap(i, machine, attempt.taskId);
 
-        return runners;
+        if (success && task.succeed(attempt)) {
+            long duration = attempt.getDuration();
+            App.log("MAP " + i + " FINISHED on " + machine + (attempt.backup ? " (backup)" : ""), new MeasuredTime(duration));
+            for (MapTask.Attempt other : task.getOtherAttempts(attempt)) {
+                System.err.println("[App] Cancelling the attempt of MAP " + i + " on " + other.machine);
+                workers.get(other.machine).cancel(other.taskId);
+            }
+            manifest.recordMap(i, machine);
+            scheduler.submit("SHUFFLE " + i, () -> runShuffle(scheduler, task, machine, -1));
+            mapDone(duration);
+        } else if (success) {
+            System.err.println("[App] Dropped the attempt of MAP " + i + " on " + machine + ", another one won");
+        } else if (!task.fail(attempt)) {
+            System.err.println(task.isDone()
+                ? "[App] Dropped the attempt of MAP " + i + " on " + machine + ", another one won"
+                : "[App] MAP " + i + " failed on " + machine + ", waiting for its other attempt");
+        } else {
+            // Machines that died don't get the retry
+            isAlive(machine);
+            retryMap(scheduler, task);
+        }
     }
 
-    // Reduce
+    /**
+     * Gives `task` a new attempt on another live machine, or fails the job once it had
+     * `Constants.maxTaskAttempts` attempts.
+     */
+    private void retryMap(Scheduler scheduler, MapTask task) {
+        String machine = task.getAttemptsCount() < Constants.maxTaskAttempts ? pickMachine(task.getMachines()) : null;
+        if (machine == null) {
+            mapFailed();
+            throw new IllegalStateException("Split " + task.split + " failed after " + task.getAttemptsCount() + " attempts");
+        }
+        System.err.println("[App] Retrying MAP " + task.split + " on " + machine);
+        scheduler.submit("MAP " + task.split + " RETRY", () -> runMapAttempt(scheduler, task, machine));
+    }
+
+    private synchronized void mapDone(long duration) {
+        finishedMapsDuration += duration;
+        finishedMaps++;
+        remainingMaps--;
+    }
 
-    private List<ProcessRunner> createReduceRunners() {
-        ArrayList<ProcessRunner> runners = new ArrayList<>(splits.getSplitsCount());
-        for (int i = 0; i < usedMachines.size(); ++i) {
-            // For each machine
-            // Run jar with 1 and map filename
-            final String machine = usedMachines.get(i);
-            final String login = Constants.username + "@" + machine;
-            
-            final String cmd1 = Constants.cd + " " + Constants.basedir;
-            final String cmd2 = Constants.runJar + " " + jarName + " 2";
-            final String command = cmd1 + "; " + cmd2;
-            ProcessBuilder execBuilder = new ProcessBuilder(Constants.ssh, login, command);
-            
-            String id = "REDUCE"+ConnectionTester.createNextId();
-            execBuilder.environment().put(ConnectionTester.IDKEY, id + " - exec");
-            
+    private synchronized void mapLost() {
+        remainingMaps++;
+    }
+
+    /**
+     * Fails the job once a split can't be mapped or shuffled. The reduces already running would
+     * keep waiting for its runs until `reduceWaitTimeout` on the workers, so they are cancelled.
+     */
+    private void mapFailed() {
+        Map<String, String> cancelled;
+        synchronized (this) {
+            mapFailed = true;
+            cancelled = new HashMap<>(runningReduces);
+        }
+        cancelled.forEach((taskId, machine) -> {
+            System.err.println("[App] Cancelling " + taskId + " on " + machine + ", a split failed");
+            workers.get(machine).cancel(taskId);
+        });
+    }
+
+    private synchronized boolean areMapsOver() {
+        return remainingMaps == 0 || mapFailed;
+    }
+
+    private synchronized boolean isMapFailed() {
+        return mapFailed;
+    }
+
+    /**
+     * Copies split `i` to `machine` unless the input is shared, and maps it there.
+     * Returns true if the map succeeded, false if it failed or was cancelled.
+     */
+    private boolean runMap(int i, String machine, String taskId) {
+        final String login = Constants.username + "@" + machine;
+        final String mkdir = Constants.mkdir + " " + Constants.splitDir;
+        final String localFile = splits.getFileForSplit(i);
+        final String[] comps = localFile.split("/");
+        final String name = comps[comps.length - 1];
+        final String splitFile = Constants.splitDir + name;
+
+        ProcessBuilder mkdirBuilder = SshConnections.ssh(login, mkdir);
+        ProcessBuilder scpSplitBuilder = SshConnections.scp(
+            login, localFile, login + ":" + splitFile
+        );
+
+        // Map with in-mapper combining: the reducer sums the counts of each word
+        // With a shared input the worker maps its range of the input directly
+        final String command = splits.isShared()
+            ? "5 " + splits.getFilePath() + " " + i + " " + splits.getOffset(i) + " " + splits.getLength(i)
+            : "3 " + splitFile;
+        
+        // DEBUG
+        String id = "MAP"+ConnectionTester.createNextId();
+        mkdirBuilder.environment().put(ConnectionTester.IDKEY, id + " - mkdir");
+        scpSplitBuilder.environment().put(ConnectionTester.IDKEY, id + " - scp splits");
+        //
+
+        if (!splits.isShared()) {
             ProcessRunner runner = new ProcessRunner();
             try {
-                runner.addProcess(execBuilder, Integer.MAX_VALUE);
+                runner.addProcess(mkdirBuilder, Constants.taskTimeout);
+                runner.addProcess(scpSplitBuilder, Constants.taskTimeout);
             } catch (AlreadyRunningException e) {
                 System.err.println("This should never happen");
                 System.exit(1);
             }
-            runners.add(runner);
+            if (!runner.execute(machine, "COPY " + i)) {
+                System.err.println("[App] Unable to copy split " + i + " to " + machine);
+                return false;
+            }
         }
+        Metrics.Task metrics = Metrics.shared().task("MAP " + i, machine);
+        return workers.get(machine).execute(metrics, taskId, command, Constants.taskTimeout);
+    }
+
+    // Shuffle
+
+    /**
+     * Sends the runs of the split of `task` from `machine`, which mapped it, to the reducers,
+     * only the run of `partition` unless it is -1. A shuffle that fails because a reducer died is
+     * sent again once the partition moved, and a split whose machine died is mapped again.
+     */
+    private void runShuffle(Scheduler scheduler, MapTask task, String machine, int partition) {
+        final int i = task.split;
+        final String mapFile = Constants.mapsDir + "UM" + i + ".bin";
+        for (int attempt = 1; ; ++attempt) {
+            // Run 1 with the map filename on the worker that mapped it,
+            // the reducers are read on each attempt since a partition may have moved
+            final List<String> usedReducers = getShuffleReducers();
+            final String command = "1 " + mapFile + " " + codec + " " + String.join(",", usedReducers)
+                + (partition != -1 ? " " + partition : "");
+            Metrics.Task metrics = Metrics.shared().task("SHUFFLE " + i + (partition != -1 ? " PARTITION " + partition : ""), machine);
+            if (workers.get(machine).execute(metrics, command, Constants.taskTimeout)) {
+                synchronized (this) {
+                    // Runs sent to a machine that lost its partition meanwhile don't count
+                    List<Integer> delivered = IntStream.range(0, usedReducers.size())
+                        .filter(p -> partition == -1 || p == partition)
+                        .filter(p -> usedReducers.get(p).equals(reducers.get(p)))
+                        .boxed()
+                        .collect(Collectors.toList());
+                    manifest.recordShuffle(i, delivered);
+                }
+                return;
+            }
 
-        return runners;
+            if (!isAlive(machine)) {
+                // The map file is gone with the machine, mapping the split again also sends its runs
+                boolean retry;
+                synchronized (task) {
+                    if (!task.lose(machine)) { return; }
+                    retry = task.needsAttempt();
+                }
+                System.err.println("[App] The output of MAP " + i + " was lost with " + machine);
+                mapLost();
+                if (retry) {
+                    retryMap(scheduler, task);
+                }
+                return;
+            }
+            checkReducers(scheduler);
+            if (attempt >= Constants.maxTaskAttempts) {
+                // The reducers would wait for these runs until they time out
+                mapFailed();
+                throw new IllegalStateException(machine + " failed to shuffle split " + i + " " + attempt + " times");
+            }
+        }
     }
 
-    // Retrieve results
+    private synchronized List<String> getReducers() {
+        return new ArrayList<>(reducers);
+    }
 
-    private List<ProcessRunner> createRetrieveResultsRunners() {
-        ArrayList<ProcessRunner> runners = new ArrayList<>(splits.getSplitsCount());
-        for (int i = 0; i < usedMachines.size(); ++i) {
-            final String machine = usedMachines.get(i);
-            final String login = Constants.username + "@" + machine;
-            
-            ProcessBuilder mkdirResultsBuilder = new ProcessBuilder("mkdir", "-p", Constants.resultsDir);
-            
-            final String machineResultDir = Constants.resultsDir + machine + "/";
-            final String origin = login + ":" + Constants.reducesDir;
-            final String dest = machineResultDir;
-            ProcessBuilder scpBuilder = new ProcessBuilder(Constants.scp, "-r", origin, dest);
-
-            String id = "RETIEVE"+ConnectionTester.createNextId();
-            mkdirResultsBuilder.environment().put(ConnectionTester.IDKEY, id + " - mkdir");
-            scpBuilder.environment().put(ConnectionTester.IDKEY, id + " - scp");
-            
-            ProcessRunner runner = new ProcessRunner();
-            try {
-                runner.addProcess(mkdirResultsBuilder, Integer.MAX_VALUE);
-                runner.addProcess(scpBuilder, Integer.MAX_VALUE);
-            } catch (AlreadyRunningException e) {
-                System.err.println("This should never happen");
-                System.exit(1);
+    /**
+     * Reducers a shuffle sends the runs to, partitions reduced by an earlier run are skipped.
+     */
+    private synchronized List<String> getShuffleReducers() {
+        List<String> shuffleReducers = new ArrayList<>(reducers);
+        for (int p = 0; p < shuffleReducers.size(); ++p) {
+            if (isReduced(p)) {
+                shuffleReducers.set(p, Constants.skippedReducer);
             }
-            runners.add(runner);
         }
+        return shuffleReducers;
+    }
 
-        return runners;
+    private synchronized String getReducer(int partition) {
+        return reducers.get(partition);
     }
 
-    private void appendReultsFromFile(String origin, String dest) {
-        FileReader fr = null;
-        BufferedReader br = null;
+    /**
+     * Moves the partitions of the reducers that died.
+     */
+    private void checkReducers(Scheduler scheduler) {
+        List<String> current = getReducers();
+        for (int p = 0; p < current.size(); ++p) {
+            if (!isReduced(p) && !isAlive(current.get(p))) {
+                recoverPartition(scheduler, p, current.get(p));
+            }
+        }
+    }
 
-        FileWriter fw = null;
-        BufferedWriter bw = null;
-        PrintWriter pw = null;
+    /**
+     * Moves partition `p` from `deadMachine` to a live machine. Every split mapped so far sends its
+     * run of `p` again, the splits mapped later send it to the new machine directly. Runs that
+     * arrive twice are only merged once by the reducer.
+     */
+    private void recoverPartition(Scheduler scheduler, int p, String deadMachine) {
+        String machine;
+        synchronized (this) {
+            if (!reducers.get(p).equals(deadMachine)) { return; }
+            machine = pickMachine(List.of(deadMachine));
+            if (machine == null) {
+                throw new IllegalStateException("No machine left to reduce partition " + p);
+            }
+            reducers.set(p, machine);
+            manifest.recordPartition(p, machine);
+        }
+        System.err.println("[App] Partition " + p + " moves from " + deadMachine + " to " + machine);
 
-        try {
-            fr = new FileReader(origin);
-            br = new BufferedReader(fr);
+        for (MapTask task : mapTasks) {
+            final String mapper = task.getWinner();
+            if (mapper != null) {
+                scheduler.submit("SHUFFLE " + task.split + " PARTITION " + p, () -> runShuffle(scheduler, task, mapper, p));
+            }
+        }
+    }
 
-            fw = new FileWriter(dest, true);
-            bw = new BufferedWriter(fw);
-            pw = new PrintWriter(bw);
+    // Reduce
 
-            String result = br.readLine();
-            if (result == null) { return; }
+    private void submitReduces(Scheduler scheduler) {
+        for (int p = 0; p < reducers.size(); ++p) {
+            if (isReduced(p)) {
+                System.out.println("[App] Partition " + p + " was reduced by an earlier run");
+                continue;
+            }
+            final int partition = p;
+            scheduler.submit("REDUCE " + p, () -> runReduce(scheduler, partition));
+        }
+    }
+
+    /**
+     * Reduces partition `p` and fetches its output. The reducer waits for one run per split
+     * and keeps the top words of the partition if only those are retrieved.
+     * A partition whose machine died is reduced again on the machine it moved to.
+     * An attempt that doesn't answer within `reduceTimeout` fails like any other, so a hung reducer
+     * doesn't block the job.
+     * The reduce is cancelled if a split fails, see `mapFailed`.
+     */
+    private void runReduce(Scheduler scheduler, int p) {
+        final String command = "2 " + p + " " + splits.getSplitsCount() + " " + topK + (byCount ? " count" : " word");
+        int failures = 0;
+        for (int attempt = 0; ; ++attempt) {
+            String machine = getReducer(p);
+            final String taskId = "REDUCE-" + p + "-" + attempt;
+            synchronized (this) {
+                if (mapFailed) {
+                    throw new IllegalStateException("Partition " + p + " can't be reduced, a split failed");
+                }
+                runningReduces.put(taskId, machine);
+            }
+            Metrics.Task metrics = Metrics.shared().task("REDUCE " + p, machine);
+            boolean reduced = workers.get(machine).execute(metrics, taskId, command, Constants.reduceTimeout);
+            synchronized (this) {
+                runningReduces.remove(taskId);
+            }
+            if (reduced && (streamResults || fetchPartition(p, machine))) {
+                // Streamed partitions are only read at the end, a resumed job reduces them again
+                if (!streamResults) {
+                    manifest.recordReduce(p, machine);
+                }
+                return;
+            }
 
-            pw.println(result);
+            if (isMapFailed()) {
+                throw new IllegalStateException("Partition " + p + " can't be reduced, a split failed");
+            }
+            if (!isAlive(machine)) {
+                recoverPartition(scheduler, p, machine);
+            } else if (++failures >= Constants.maxTaskAttempts) {
+                throw new IllegalStateException(machine + " failed to reduce partition " + p + " " + failures + " times");
+            } else {
+                System.err.println("[App] Retrying REDUCE " + p + " on " + machine);
+            }
+        }
+    }
+
+    /**
+     * True if an earlier run of the job reduced partition `p` and its output is still here.
+     */
+    private boolean isReduced(int p) {
+        String machine = manifest.getReduceMachine(p);
+        return machine != null && new File(getFileForPartition(p, machine)).exists();
+    }
+
+    // Retrieve results
+
+    private String getFileForPartition(int partition, String machine) {
+        return Constants.resultsDir + machine + "/" + (topK > 0 ? "top" + partition + ".txt" : partition + ".bin");
+    }
+
+    /**
+     * Copies the reduce file of partition `p` from `machine`, or only its top words.
+     */
+    private boolean fetchPartition(int p, String machine) {
+        final String login = Constants.username + "@" + machine;
+
+        ProcessBuilder mkdirResultsBuilder = new ProcessBuilder(
+            "mkdir", "-p", Constants.resultsDir + machine + "/"
+        );
+
+        final String origin = login + ":" + (topK > 0
+            ? Constants.topsDir + p + ".txt"
+            : Constants.reducesDir + p + ".bin");
+        ProcessBuilder scpBuilder = SshConnections.scp(login, origin, getFileForPartition(p, machine));
+
+        String id = "RETIEVE"+ConnectionTester.createNextId();
+        mkdirResultsBuilder.environment().put(ConnectionTester.IDKEY, id + " - mkdir");
+        scpBuilder.environment().put(ConnectionTester.IDKEY, id + " - scp");
+
+        ProcessRunner runner = new ProcessRunner();
+        try {
+            runner.addProcess(mkdirResultsBuilder, Constants.taskTimeout);
+            runner.addProcess(scpBuilder, Constants.taskTimeout);
+        } catch (AlreadyRunningException e) {
+            System.err.println("This should never happen");
+            System.exit(1);
+        }
+        return runner.execute(machine, "FETCH " + p);
+    }
+
+    /**
+     * Merges the top words of every partition. Partitions don't share words, so the `topK`
+     * most frequent words of the job are among them.
+     */
+    private void createTopResultsFile() {
+        TopWords top = new TopWords(topK);
+        try {
+            for (int i = 0; i < reducers.size(); ++i) {
+                top.addFromFile(getFileForPartition(i, reducers.get(i)));
+            }
+            top.write(Constants.resultsDir + "results.txt");
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(1);
-        } finally {
-            try { pw.close(); } catch (Exception e) { }
-            try { bw.close(); } catch (Exception e) { }
-            try { fw.close(); } catch (Exception e) { }
-
-            try { br.close(); } catch (Exception e) { }
-            try { fr.close(); } catch (Exception e) { }
         }
     }
 
+    /**
+     * Merges the reduce files of every partition into the results file, sorted by word or by count.
+     * With `streamResults`, each reduce file is read from its worker through ssh as it is merged.
+     * The streams stay open for the whole merge, so they can't queue behind each other in the
+     * `ProcessExecutor`: at most `sessionsPerHost` are opened to a machine, and its other partitions
+     * are copied through the executor beforehand.
+     */
     private void createResultsFile() {
-        for (int i = 0; i < usedMachines.size(); ++i) {
-            final String resultsFile = Constants.resultsDir + "results.txt";
-            final String machine = usedMachines.get(i);
-            final String resultsDir = Constants.resultsDir + machine;
-
-            List<Path> machineResults = null;
-            try (Stream<Path> paths = Files.walk(Paths.get(resultsDir))) {
-                machineResults = paths
-                    .filter(Files::isRegularFile)
-                    .collect(Collectors.toUnmodifiableList());
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(1);
+        final String resultsFile = Constants.resultsDir + "results.txt";
+        List<RecordReader> sources = new ArrayList<>();
+        List<Process> streams = new ArrayList<>();
+        boolean[] streamed = new boolean[reducers.size()];
+        Map<String, Integer> streamsPerMachine = new HashMap<>();
+        try {
+            Files.createDirectories(Paths.get(Constants.resultsDir));
+            // Copies first, so they don't run next to the streams of their machine
+            for (int p = 0; p < reducers.size(); ++p) {
+                String machine = reducers.get(p);
+                if (!streamResults || isReduced(p)) { continue; }
+                streamed[p] = streamsPerMachine.merge(machine, 1, Integer::sum) <= Constants.sessionsPerHost;
+                if (!streamed[p] && !fetchPartition(p, machine)) {
+                    throw new IOException("Failed to copy partition " + p + " from " + machine);
+                }
+            }
+            for (int p = 0; p < reducers.size(); ++p) {
+                String machine = reducers.get(p);
+                if (!streamed[p]) {
+                    sources.add(new RecordReader(getFileForPartition(p, machine)));
+                    continue;
+                }
+                final String login = Constants.username + "@" + machine;
+                final String reduceFile = Constants.reducesDir + p + ".bin";
+                ProcessBuilder streamBuilder = SshConnections.ssh(login, "cat " + reduceFile)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT);
+                SshConnections.connect(streamBuilder);
+                Process stream = streamBuilder.start();
+                streams.add(stream);
+                sources.add(new RecordReader(machine + ":" + reduceFile, stream.getInputStream()));
             }
 
-            for (Path path : machineResults) {
-                appendReultsFromFile(path.toString(), resultsFile);
+            ResultCollector.collect(sources, resultsFile, byCount);
+
+            for (Process stream : streams) {
+                if (stream.waitFor() != 0) {
+                    throw new IOException("Streaming a reduce file failed with exit code " + stream.exitValue());
+                }
             }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            streams.forEach(Process::destroy);
         }
     }
 
@@ -461,7 +1051,7 @@ public class App {
         BufferedReader br = null;
 
         try {
-            fr = new FileReader(resultsFile);
+            fr = new FileReader(resultsFile, StandardCharsets.UTF_8);
             br = new BufferedReader(fr);
 
             String line = null;
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.io.IOException;
@@ -57,7 +58,7 @@ public class ConnectionTester {
                 i -> false
             ));
         // System.out.println("[ConnectionTester] <Creating Threads> Testing Machines");
-        List<Thread> threads = results.entrySet().stream()
+        List<Future<Boolean>> tests = results.entrySet().stream()
             .map(entry -> new AbstractMap.SimpleEntry<>(entry.getKey(), createTestMachine(entry.getKey(), 4000)))
             .map(entry -> {
                 ProcessRunner runner = new ProcessRunner();
@@ -71,22 +72,11 @@ public class ConnectionTester {
                 final String key = entry.getKey();
                 runner.onComplete = p -> results.replace(key, verifyProcessOutput(p, key));
 
-                return runner;
+                return runner.submit(key, "TEST");
             })
-            .map(runner -> new Thread(runner))
             .collect(Collectors.toList());
-        // DEBUG
-        // System.out.println("[ConnectionTester] <Starting Threads> Testing Machines");
-        threads.forEach(t -> t.start());
-        // System.out.println("[ConnectionTester] <Waiting on threads Threads> Testing Machines");
-        threads.forEach(t -> {
-            try {
-                t.join();
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(1);
-            }
-        });
+        // System.out.println("[ConnectionTester] <Waiting on tests> Testing Machines");
+        tests.forEach(ProcessExecutor::await);
         // System.out.println("[ConnectionTester] <Reading Results> Testing Machines");
 
         if (verbose) {
@@ -112,7 +102,7 @@ public class ConnectionTester {
         try {
             // Output should have only one line
             line = br.readLine();
-            return line.equals(machineName);
+            return machineName.equals(line);
         } catch (IOException e) {
             e.printStackTrace();
             return false;
@@ -155,7 +145,7 @@ public class ConnectionTester {
     public static final String IDKEY = "internal-debug-id";
     // </DEBUG>
     private ProcessBuilder createTestMachine(String name, long timeout) {
-        ProcessBuilder p = new ProcessBuilder(Constants.ssh, name, Constants.hostname);
+        ProcessBuilder p = SshConnections.ssh(Constants.username + "@" + name, Constants.hostname);
         p.environment().put(IDKEY, ""+createNextId()); // DEBUG
         return p;
     }
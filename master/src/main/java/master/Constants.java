@@ -9,12 +9,63 @@ public class Constants {
     static final String mkdir = "mkdir -p";
     static final String cd = "cd";
     static final String hostname = "hostname";
-    static final String runJar = "java -jar";
+    static final String java = "java";
+    static final String runJar = java + " -jar";
+    // System property of the slave setting the threads of a map
+    static final String mapThreadsProperty = "slave.mapThreads";
     static final String splitDir = basedir + "splits/";
     static final String mapsDir = basedir + "maps/";
     static final String machinesFile = basedir + "machines.txt";
     static final String reducesDir = basedir + "reduces/";
+    static final String shufflesDir = basedir + "shuffles/";
+    static final String receivedShufflesDir = basedir + "shufflesreceived/";
+    static final String mergesDir = basedir + "merges/";
+    static final String topsDir = basedir + "tops/";
     static final String resultsDir = basedir + "results/";
+    static final String daemonLog = basedir + "daemon.log";
+    static final String manifestFile = basedir + "job.manifest";
+    // Metrics of the job, see `Metrics`
+    static final String metricsFile = resultsDir + "metrics.json";
+    // Buffer of the results file, written by a single writer
+    static final int resultsBufferSize = 1 << 20;
+    // Secret the daemons expect, written by `deploy`, outside of basedir so cleaning doesn't remove it
+    static final String tokenFile = "/tmp/" + username + "-daemon.token";
+    static final int daemonPort = 50123;
+    // Threads running ssh and scp sessions, and sessions open to one machine at a time
+    static final int processThreads = 32;
+    static final int sessionsPerHost = 4;
+    // Master ssh connections, one per machine, kept outside of basedir so cleaning doesn't remove them
+    static final String sshControlDir = "/tmp/" + username + "-ssh/";
+    // Seconds a master connection stays up once its last session ended
+    static final int sshControlPersist = 600;
+    // Time given to open or close a master connection
+    static final long sshControlTimeout = 10000;
+    static final long splitSize = 64L * 1024 * 1024;
+    static final int mapSlotsPerMachine = 1;
+    // Default number of partitions, times the number of machines mapping
+    static final int partitionsPerMachine = 4;
+    // Chunks of the input sampled to estimate the size of the partitions
+    static final int sampleChunks = 32;
+    static final int sampleChunkSize = 64 * 1024;
+    static final String shuffleCodec = "lz4";
+    // Reducer given in a shuffle for a partition that is already reduced, its run isn't sent
+    static final String skippedReducer = "-";
+    // A map gets a backup attempt once it ran this many times longer than the average finished map
+    static final double speculativeSlowdown = 1.5;
+    // ... and for at least this long
+    static final long speculativeMinRuntime = 2000;
+    // Machines beyond the ones mapping and reducing that only run backup attempts
+    static final int speculativeSpareMachines = 2;
+    // Idle slots look for stragglers this often
+    static final long speculationInterval = 200;
+    // A task failing this many times fails the job
+    static final int maxTaskAttempts = 4;
+    // Milliseconds after which a map, shuffle or copy is considered failed
+    static final long taskTimeout = 30L * 60 * 1000;
+    // Milliseconds a reducer waits for the runs of its partition, same as `reduceWaitTimeout` of the slaves
+    static final long reduceWaitTimeout = 30L * 60 * 1000;
+    // A reduce waits for its runs and then merges them
+    static final long reduceTimeout = reduceWaitTimeout + taskTimeout;
 
     private Constants() { }
 }
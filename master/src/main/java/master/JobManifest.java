@@ -0,0 +1,274 @@
+package master;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Journal of the job kept at `Constants.manifestFile`, so that a master restarted after a crash
+ * resumes the job instead of splitting and mapping everything again. Each step is appended as a
+ * line and synced to disk once it is done:
+ *
+ *   JOB <input> <size> <last-modified> <split-size> <shared> <top-k> <order> <codec> <partitions>
+ *   SPLIT <i> <offset> <length>
+ *   SPLITS <count>                 every split is known
+ *   PARTITION <p> <machine>        machine reducing partition p from now on
+ *   MAP <i> <machine>              the map file of split i is on machine
+ *   SHUFFLE <i> <p>,...            runs of split i received by the current reducers of those partitions
+ *   REDUCE <p> <machine>           partition p was reduced on machine and fetched
+ *   DONE
+ *
+ * A manifest written for another input or other options, or by a job that finished, is started over.
+ * A last line cut short by a crash is ignored and removed.
+ */
+public class JobManifest {
+
+    // Properties
+
+    private final String fileName;
+
+    private FileOutputStream out = null;
+
+    private boolean resumed = false;
+
+    private long[] offsets = null;
+
+    private long[] lengths = null;
+
+    private final Map<Integer, String> partitions = new TreeMap<>();
+
+    private final Map<Integer, String> maps = new HashMap<>();
+
+    // Partitions whose current reducer got the run of each split
+    private final Map<Integer, Set<Integer>> shuffled = new HashMap<>();
+
+    private final Map<Integer, String> reduces = new HashMap<>();
+
+    // Getters
+
+    /**
+     * True if the manifest holds the progress of an earlier run of the same job.
+     */
+    public boolean isResumed() { return this.resumed; }
+
+    /**
+     * Offsets of the splits, null if they weren't recorded yet.
+     */
+    public long[] getOffsets() { return this.offsets; }
+
+    public long[] getLengths() { return this.lengths; }
+
+    /**
+     * Machine of each partition, empty if they weren't recorded yet.
+     */
+    public synchronized List<String> getPartitions() {
+        return new ArrayList<>(partitions.values());
+    }
+
+    /**
+     * Machine holding the map file of split `i`, or null.
+     */
+    public synchronized String getMapMachine(int i) { return maps.get(i); }
+
+    /**
+     * True if the current reducer of `partition` received the run of split `i`.
+     */
+    public synchronized boolean isShuffled(int i, int partition) {
+        return shuffled.getOrDefault(i, Set.of()).contains(partition);
+    }
+
+    /**
+     * Machine that reduced `partition`, or null.
+     */
+    public synchronized String getReduceMachine(int partition) { return reduces.get(partition); }
+
+    // Constructors
+
+    private JobManifest(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Opens the manifest of the job described by the arguments, resuming the one in `fileName`
+     * if it was written for the same job and `resume` is set.
+     */
+    public static JobManifest open(String fileName, String input, long splitSize, boolean shared, int topK,
+            String order, String codec, int partitionsCount, boolean resume) {
+        File inputFile = new File(input);
+        // Runs written with another codec or for another number of partitions can't be merged together
+        String header = "JOB " + input + " " + inputFile.length() + " " + inputFile.lastModified()
+            + " " + splitSize + " " + shared + " " + topK + " " + order + " " + codec + " " + partitionsCount;
+
+        JobManifest manifest = new JobManifest(fileName);
+        try {
+            new File(fileName).getAbsoluteFile().getParentFile().mkdirs();
+            if (resume && new File(fileName).exists()) {
+                manifest.resumed = manifest.load(header);
+            }
+            manifest.out = new FileOutputStream(fileName, manifest.resumed);
+            if (!manifest.resumed) {
+                manifest.clear();
+                manifest.append(header);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        return manifest;
+    }
+
+    // Methods
+
+    public void recordSplits(long[] offsets, long[] lengths) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < offsets.length; ++i) {
+            lines.append("SPLIT ").append(i).append(' ').append(offsets[i]).append(' ').append(lengths[i]).append('\n');
+        }
+        lines.append("SPLITS ").append(offsets.length);
+        append(lines.toString());
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    public synchronized void recordPartition(int partition, String machine) {
+        if (machine.equals(partitions.get(partition))) { return; }
+        append("PARTITION " + partition + " " + machine);
+        applyPartition(partition, machine);
+    }
+
+    public synchronized void recordMap(int i, String machine) {
+        append("MAP " + i + " " + machine);
+        maps.put(i, machine);
+    }
+
+    /**
+     * Records that the current reducers of `delivered` received their run of split `i`.
+     */
+    public synchronized void recordShuffle(int i, List<Integer> delivered) {
+        if (delivered.isEmpty()) { return; }
+        String list = delivered.stream().map(String::valueOf).collect(Collectors.joining(","));
+        append("SHUFFLE " + i + " " + list);
+        applyShuffle(i, delivered);
+    }
+
+    public synchronized void recordReduce(int partition, String machine) {
+        append("REDUCE " + partition + " " + machine);
+        reduces.put(partition, machine);
+    }
+
+    public synchronized void recordDone() {
+        append("DONE");
+    }
+
+    public synchronized void close() {
+        try { out.close(); } catch (Exception e) { }
+    }
+
+    private void applyPartition(int partition, String machine) {
+        partitions.put(partition, machine);
+        // The new reducer has none of the runs of the partition
+        shuffled.values().forEach(received -> received.remove(partition));
+    }
+
+    private void applyShuffle(int i, List<Integer> delivered) {
+        shuffled.computeIfAbsent(i, key -> new HashSet<>()).addAll(delivered);
+    }
+
+    private void clear() {
+        offsets = null;
+        lengths = null;
+        partitions.clear();
+        maps.clear();
+        shuffled.clear();
+        reduces.clear();
+    }
+
+    /**
+     * Replays the manifest. Returns false if it belongs to another job or to a finished one.
+     */
+    private boolean load(String header) throws IOException {
+        List<long[]> splits = new ArrayList<>();
+        int splitsCount = -1;
+
+        String content = Files.readString(Paths.get(fileName), StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>(List.of(content.split("\n")));
+        if (!content.endsWith("\n")) {
+            // Cut short by a crash, it is dropped so that the next step starts on its own line
+            lines.remove(lines.size() - 1);
+            String complete = content.substring(0, content.lastIndexOf('\n') + 1);
+            try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE)) {
+                channel.truncate(complete.getBytes(StandardCharsets.UTF_8).length);
+            }
+        }
+        if (lines.isEmpty() || !header.equals(lines.get(0))) { return false; }
+
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(" ");
+            try {
+                switch (fields[0]) {
+                    case "SPLIT":
+                        splits.add(new long[] { Long.parseLong(fields[2]), Long.parseLong(fields[3]) });
+                        break;
+                    case "SPLITS":
+                        splitsCount = Integer.parseInt(fields[1]);
+                        break;
+                    case "PARTITION":
+                        applyPartition(Integer.parseInt(fields[1]), fields[2]);
+                        break;
+                    case "MAP":
+                        maps.put(Integer.parseInt(fields[1]), fields[2]);
+                        break;
+                    case "SHUFFLE":
+                        applyShuffle(Integer.parseInt(fields[1]), Stream.of(fields[2].split(","))
+                            .map(Integer::valueOf)
+                            .collect(Collectors.toList()));
+                        break;
+                    case "REDUCE":
+                        reduces.put(Integer.parseInt(fields[1]), fields[2]);
+                        break;
+                    case "DONE":
+                        return false;
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                System.err.println("[JobManifest] Ignoring \"" + line + "\"");
+            }
+        }
+
+        if (splitsCount == -1 || splits.size() != splitsCount) {
+            // Nothing was mapped before the splits were all known
+            clear();
+            return false;
+        }
+        offsets = splits.stream().mapToLong(split -> split[0]).toArray();
+        lengths = splits.stream().mapToLong(split -> split[1]).toArray();
+        return true;
+    }
+
+    private synchronized void append(String lines) {
+        try {
+            out.write((lines + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            // The job goes on, it just can't be resumed from this point
+            System.err.println("[JobManifest] Unable to write " + fileName + ": " + e.getMessage());
+        }
+    }
+
+}
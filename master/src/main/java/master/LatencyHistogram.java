@@ -0,0 +1,74 @@
+package master;
+
+/**
+ * Distribution of durations in buckets of powers of two microseconds: bucket i holds the durations
+ * up to 2^i us, so the percentiles it gives are at most twice the real value. Memory doesn't grow
+ * with the number of durations.
+ */
+public class LatencyHistogram {
+
+    // Up to 2^40 us, about 12 days
+    private static final int bucketsCount = 41;
+
+    // Properties
+
+    private final long[] buckets = new long[bucketsCount];
+
+    private long count = 0;
+
+    private long total = 0;
+
+    private long max = 0;
+
+    // Getters
+
+    public synchronized long getCount() { return count; }
+
+    public synchronized long getTotal() { return total; }
+
+    public synchronized long getMax() { return max; }
+
+    public synchronized long getMean() { return count == 0 ? 0 : total / count; }
+
+    /**
+     * Number of durations in bucket `i`, the ones up to `getUpperBound(i)`.
+     */
+    public synchronized long getBucket(int i) { return buckets[i]; }
+
+    public int getBucketsCount() { return bucketsCount; }
+
+    /**
+     * Longest duration of bucket `i` in nanoseconds.
+     */
+    public long getUpperBound(int i) { return (1L << i) * 1000; }
+
+    // Methods
+
+    public synchronized void add(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        // Smallest i such that micros <= 2^i
+        int i = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        buckets[Math.min(i, bucketsCount - 1)]++;
+        count++;
+        total += nanos;
+        max = Math.max(max, nanos);
+    }
+
+    /**
+     * Duration under which a fraction `q` of the durations are, as the bound of its bucket
+     * but no more than the longest duration.
+     */
+    public synchronized long getPercentile(double q) {
+        if (count == 0) { return 0; }
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+        for (int i = 0; i < bucketsCount; ++i) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(getUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+}
@@ -0,0 +1,188 @@
+package master;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Attempts at mapping one split. The split is first given to one machine; once no split is left
+ * to hand out, a straggler gets a backup attempt on another machine and the first attempt to
+ * succeed wins: only its map file is shuffled and the other attempt is cancelled.
+ * A split whose attempts all failed, or whose map file was lost with its machine, is given
+ * a new attempt until `Constants.maxTaskAttempts`.
+ */
+public class MapTask {
+
+    public static class Attempt {
+
+        public final String machine;
+
+        public final String taskId;
+
+        // Started while another attempt was running
+        public final boolean backup;
+
+        private final long startTime = System.nanoTime();
+
+        private boolean running = true;
+
+        private Attempt(String machine, String taskId, boolean backup) {
+            this.machine = machine;
+            this.taskId = taskId;
+            this.backup = backup;
+        }
+
+        /**
+         * Nanoseconds since the attempt started.
+         */
+        public long getDuration() {
+            return System.nanoTime() - startTime;
+        }
+    }
+
+    // Properties
+
+    public final int split;
+
+    private final List<Attempt> attempts = new ArrayList<>();
+
+    private int running = 0;
+
+    private boolean backedUp = false;
+
+    // Null until an attempt succeeds
+    private Attempt winner = null;
+
+    // Getters
+
+    public synchronized boolean isDone() { return winner != null; }
+
+    public synchronized int getAttemptsCount() { return attempts.size(); }
+
+    /**
+     * Machine holding the map file of the split, null until an attempt succeeded.
+     */
+    public synchronized String getWinner() {
+        return winner != null ? winner.machine : null;
+    }
+
+    /**
+     * True while the split is being mapped by a single attempt, which may then get a backup.
+     */
+    public synchronized boolean canSpeculate() {
+        return winner == null && running == 1 && !backedUp;
+    }
+
+    /**
+     * Nanoseconds since the oldest running attempt started.
+     */
+    public synchronized long getElapsed() {
+        return attempts.stream()
+            .filter(attempt -> attempt.running)
+            .mapToLong(Attempt::getDuration)
+            .max()
+            .orElse(0);
+    }
+
+    public synchronized boolean isRunningOn(String machine) {
+        return attempts.stream().anyMatch(attempt -> attempt.running && attempt.machine.equals(machine));
+    }
+
+    /**
+     * Machines that already got an attempt, which a retry avoids if it can.
+     */
+    public synchronized List<String> getMachines() {
+        return attempts.stream().map(attempt -> attempt.machine).collect(Collectors.toList());
+    }
+
+    // Constructors
+
+    public MapTask(int split) {
+        this.split = split;
+    }
+
+    // Methods
+
+    /**
+     * Starts a new attempt on `machine`, as the first one, a retry or a backup of the running one.
+     * Returns null if the split is done or already has a backup.
+     */
+    public synchronized Attempt start(String machine) {
+        if (winner != null || isRunningOn(machine) || (running > 0 && !canSpeculate())) {
+            return null;
+        }
+        boolean backup = running > 0;
+        backedUp |= backup;
+        Attempt attempt = new Attempt(machine, "MAP-" + split + "-" + attempts.size(), backup);
+        attempts.add(attempt);
+        running++;
+        return attempt;
+    }
+
+    /**
+     * Marks the split as mapped by `machine` in an earlier run of the job, whose map file is
+     * shuffled again if it is still there.
+     */
+    public synchronized Attempt restore(String machine) {
+        Attempt attempt = new Attempt(machine, "MAP-" + split + "-" + attempts.size(), false);
+        attempt.running = false;
+        attempts.add(attempt);
+        winner = attempt;
+        return attempt;
+    }
+
+    /**
+     * Called when `attempt` succeeded. Returns true if it is the first one,
+     * in which case its map file is the one to shuffle.
+     */
+    public synchronized boolean succeed(Attempt attempt) {
+        stop(attempt);
+        if (winner != null) { return false; }
+        winner = attempt;
+        return true;
+    }
+
+    /**
+     * Called when `attempt` failed. Returns true if the split needs another attempt,
+     * i.e. it isn't done and no other attempt is running.
+     */
+    public synchronized boolean fail(Attempt attempt) {
+        stop(attempt);
+        return winner == null && running == 0;
+    }
+
+    /**
+     * Called when the machine of the winning attempt died with the map file. Returns false if
+     * the loss was already known.
+     */
+    public synchronized boolean lose(String machine) {
+        if (winner == null || !winner.machine.equals(machine)) { return false; }
+        winner = null;
+        backedUp = false;
+        return true;
+    }
+
+    /**
+     * True if the split isn't done and no attempt is running.
+     */
+    public synchronized boolean needsAttempt() {
+        return winner == null && running == 0;
+    }
+
+    /**
+     * Running attempts other than `attempt`, to cancel once it won.
+     */
+    public synchronized List<Attempt> getOtherAttempts(Attempt attempt) {
+        return attempts.stream()
+            .filter(other -> other.running && other != attempt)
+            .collect(Collectors.toList());
+    }
+
+    private void stop(Attempt attempt) {
+        if (attempt.running) {
+            attempt.running = false;
+            running--;
+        }
+    }
+
+}
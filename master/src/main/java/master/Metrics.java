@@ -0,0 +1,357 @@
+package master;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Measures of the job, exported at its end to find the machine or the phase that slows it down.
+ * Every ssh session and daemon command is a `Task`, named after what it does (e.g. `MAP 3`, `COPY 3`),
+ * whose first word is its phase. Tasks record, on the machine they ran on:
+ * - queue wait: time before the work started, in the per-machine queue of `ProcessExecutor` for
+ *   sessions, or waiting for its runs to arrive on the slave for a reduce
+ * - start latency: time to connect and start the processes of a session, or for a daemon command
+ *   the round trip on top of its run on the slave
+ * - runtime: from start to end as seen by the master
+ * - bytes and records read and written, and shuffle bytes, as reported by the daemon.
+ * Each phase keeps histograms of the runtime and queue wait of its tasks, and the stages of
+ * the job (e.g. `PIPELINE`) their wall-clock time.
+ */
+public class Metrics {
+
+    // Task
+
+    public static class Task {
+
+        public final String name;
+
+        public final String phase;
+
+        public final String host;
+
+        private final long createdAt = System.nanoTime();
+
+        private long startedAt = -1;
+
+        // Run time on the slave reported by the daemon, -1 for sessions
+        private long remoteRuntime = -1;
+
+        private boolean success = false;
+
+        private long queueWait = 0;
+
+        private long startLatency = 0;
+
+        private long runtime = 0;
+
+        private long bytesRead = 0;
+
+        private long bytesWritten = 0;
+
+        private long recordsIn = 0;
+
+        private long recordsOut = 0;
+
+        private long shuffleBytes = 0;
+
+        private Task(String name, String host) {
+            this.name = name;
+            this.phase = name.split(" ")[0];
+            this.host = host;
+        }
+
+        /**
+         * Ends the queue wait of the task, which starts when it is created.
+         */
+        public synchronized void started() {
+            startedAt = System.nanoTime();
+            queueWait += startedAt - createdAt;
+        }
+
+        public synchronized void addStartLatency(long nanos) {
+            startLatency += nanos;
+        }
+
+        /**
+         * Adds the counters a daemon sent back with its reply, e.g. `read=1024 written=512 ... run=4000`.
+         * Unknown counters are ignored.
+         */
+        public synchronized void addCounters(String counters) {
+            for (String counter : counters.trim().split(" ")) {
+                String[] keyValue = counter.split("=");
+                if (keyValue.length != 2) { continue; }
+                long value;
+                try {
+                    value = Long.parseLong(keyValue[1]);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                switch (keyValue[0]) {
+                    case "read": bytesRead += value; break;
+                    case "written": bytesWritten += value; break;
+                    case "in": recordsIn += value; break;
+                    case "out": recordsOut += value; break;
+                    case "shuffle": shuffleBytes += value; break;
+                    case "wait": queueWait += value; break;
+                    case "run": remoteRuntime = Math.max(remoteRuntime, 0) + value; break;
+                    default: break;
+                }
+            }
+        }
+
+        private synchronized void finish(boolean success) {
+            long now = System.nanoTime();
+            this.success = success;
+            this.runtime = now - (startedAt >= 0 ? startedAt : createdAt);
+            if (remoteRuntime >= 0) {
+                startLatency += Math.max(0, runtime - remoteRuntime);
+            }
+        }
+
+        private synchronized long[] values() {
+            return new long[] {
+                queueWait, startLatency, runtime, bytesRead, bytesWritten, recordsIn, recordsOut, shuffleBytes
+            };
+        }
+    }
+
+    // Names of `Task.values()` in the exports
+    private static final String[] valueNames = {
+        "queueWaitNanos", "startLatencyNanos", "runtimeNanos", "bytesRead", "bytesWritten",
+        "recordsIn", "recordsOut", "shuffleBytes"
+    };
+
+    private static final double[] percentiles = { 0.5, 0.9, 0.99 };
+
+    private static Metrics shared = null;
+
+    // Properties
+
+    private final List<Task> tasks = new ArrayList<>();
+
+    private final Map<String, LatencyHistogram> runtimes = new TreeMap<>();
+
+    private final Map<String, LatencyHistogram> queueWaits = new TreeMap<>();
+
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+
+    // Constructors
+
+    /**
+     * Metrics of the job run by this master.
+     */
+    public static synchronized Metrics shared() {
+        if (shared == null) {
+            shared = new Metrics();
+        }
+        return shared;
+    }
+
+    // Methods
+
+    /**
+     * Creates the task `name` running on `host`. Its queue wait starts now.
+     */
+    public Task task(String name, String host) {
+        return new Task(name, host);
+    }
+
+    /**
+     * Ends `task` and adds it to the metrics.
+     */
+    public void finish(Task task, boolean success) {
+        task.finish(success);
+        long[] values = task.values();
+        synchronized (this) {
+            tasks.add(task);
+            queueWaits.computeIfAbsent(task.phase, phase -> new LatencyHistogram()).add(values[0]);
+            runtimes.computeIfAbsent(task.phase, phase -> new LatencyHistogram()).add(values[2]);
+        }
+    }
+
+    /**
+     * Records the wall-clock time of a stage of the job.
+     */
+    public synchronized void recordStage(String name, long nanos) {
+        stages.put(name, nanos);
+    }
+
+    /**
+     * Writes every metric to `fileName`, as CSV if it ends with `.csv` and as JSON otherwise.
+     */
+    public synchronized void write(String fileName) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8))) {
+            if (fileName.endsWith(".csv")) {
+                writeCsv(out);
+            } else {
+                writeJson(out);
+            }
+        }
+    }
+
+    /**
+     * Sums of the task values of each host, followed by the number of tasks and of failed tasks.
+     */
+    private Map<String, long[]> sumByHost() {
+        Map<String, long[]> hosts = new TreeMap<>();
+        for (Task task : tasks) {
+            long[] sums = hosts.computeIfAbsent(task.host, host -> new long[valueNames.length + 2]);
+            long[] values = task.values();
+            for (int i = 0; i < values.length; ++i) {
+                sums[i] += values[i];
+            }
+            sums[valueNames.length]++;
+            if (!task.success) {
+                sums[valueNames.length + 1]++;
+            }
+        }
+        return hosts;
+    }
+
+    private void writeJson(Writer out) throws IOException {
+        out.write("{\n  \"stages\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Long> stage : stages.entrySet()) {
+            out.write(separator + "    " + quote(stage.getKey()) + ": " + stage.getValue());
+            separator = ",\n";
+        }
+        out.write("\n  },\n  \"phases\": {");
+
+        separator = "\n";
+        for (String phase : runtimes.keySet()) {
+            long failed = tasks.stream().filter(task -> task.phase.equals(phase) && !task.success).count();
+            out.write(separator + "    " + quote(phase) + ": {\"tasks\": " + runtimes.get(phase).getCount()
+                + ", \"failed\": " + failed
+                + ",\n      \"runtimeNanos\": " + histogramJson(runtimes.get(phase))
+                + ",\n      \"queueWaitNanos\": " + histogramJson(queueWaits.get(phase)) + "}");
+            separator = ",\n";
+        }
+        out.write("\n  },\n  \"hosts\": {");
+
+        separator = "\n";
+        for (Map.Entry<String, long[]> host : sumByHost().entrySet()) {
+            long[] sums = host.getValue();
+            out.write(separator + "    " + quote(host.getKey()) + ": {\"tasks\": " + sums[valueNames.length]
+                + ", \"failed\": " + sums[valueNames.length + 1]);
+            for (int i = 0; i < valueNames.length; ++i) {
+                out.write(", " + quote(valueNames[i]) + ": " + sums[i]);
+            }
+            out.write("}");
+            separator = ",\n";
+        }
+        out.write("\n  },\n  \"tasks\": [");
+
+        separator = "\n";
+        for (Task task : tasks) {
+            out.write(separator + "    {\"name\": " + quote(task.name) + ", \"phase\": " + quote(task.phase)
+                + ", \"host\": " + quote(task.host) + ", \"success\": " + task.success);
+            long[] values = task.values();
+            for (int i = 0; i < valueNames.length; ++i) {
+                out.write(", " + quote(valueNames[i]) + ": " + values[i]);
+            }
+            out.write("}");
+            separator = ",\n";
+        }
+        out.write("\n  ]\n}\n");
+    }
+
+    private static String histogramJson(LatencyHistogram histogram) {
+        StringBuilder json = new StringBuilder("{\"mean\": " + histogram.getMean());
+        for (double q : percentiles) {
+            json.append(", \"p").append(Math.round(q * 100)).append("\": ").append(histogram.getPercentile(q));
+        }
+        json.append(", \"max\": ").append(histogram.getMax()).append(", \"buckets\": {");
+        // Only the buckets holding durations, keyed by their upper bound
+        String separator = "";
+        for (int i = 0; i < histogram.getBucketsCount(); ++i) {
+            if (histogram.getBucket(i) == 0) { continue; }
+            json.append(separator).append(quote(Long.toString(histogram.getUpperBound(i))))
+                .append(": ").append(histogram.getBucket(i));
+            separator = ", ";
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * One value per line, `section,name,host,metric,value`, so that every kind of record fits
+     * in a single table, e.g. `task,MAP 3,vm1,runtimeNanos,52000000`. Histogram buckets are
+     * named after their upper bound, e.g. `phase,MAP,,runtimeNanos.le.1024000,3`.
+     */
+    private void writeCsv(Writer out) throws IOException {
+        out.write("section,name,host,metric,value\n");
+        for (Map.Entry<String, Long> stage : stages.entrySet()) {
+            writeCsvLine(out, "stage", stage.getKey(), "", "wallNanos", stage.getValue());
+        }
+
+        for (String phase : runtimes.keySet()) {
+            long failed = tasks.stream().filter(task -> task.phase.equals(phase) && !task.success).count();
+            writeCsvLine(out, "phase", phase, "", "tasks", runtimes.get(phase).getCount());
+            writeCsvLine(out, "phase", phase, "", "failed", failed);
+            writeCsvHistogram(out, phase, "runtimeNanos", runtimes.get(phase));
+            writeCsvHistogram(out, phase, "queueWaitNanos", queueWaits.get(phase));
+        }
+
+        for (Map.Entry<String, long[]> host : sumByHost().entrySet()) {
+            long[] sums = host.getValue();
+            writeCsvLine(out, "host", host.getKey(), host.getKey(), "tasks", sums[valueNames.length]);
+            writeCsvLine(out, "host", host.getKey(), host.getKey(), "failed", sums[valueNames.length + 1]);
+            for (int i = 0; i < valueNames.length; ++i) {
+                writeCsvLine(out, "host", host.getKey(), host.getKey(), valueNames[i], sums[i]);
+            }
+        }
+
+        for (Task task : tasks) {
+            writeCsvLine(out, "task", task.name, task.host, "success", task.success ? 1 : 0);
+            long[] values = task.values();
+            for (int i = 0; i < valueNames.length; ++i) {
+                writeCsvLine(out, "task", task.name, task.host, valueNames[i], values[i]);
+            }
+        }
+    }
+
+    private static void writeCsvHistogram(Writer out, String phase, String metric, LatencyHistogram histogram)
+            throws IOException {
+        writeCsvLine(out, "phase", phase, "", metric + ".mean", histogram.getMean());
+        for (double q : percentiles) {
+            writeCsvLine(out, "phase", phase, "", metric + ".p" + Math.round(q * 100), histogram.getPercentile(q));
+        }
+        writeCsvLine(out, "phase", phase, "", metric + ".max", histogram.getMax());
+        for (int i = 0; i < histogram.getBucketsCount(); ++i) {
+            if (histogram.getBucket(i) == 0) { continue; }
+            writeCsvLine(out, "phase", phase, "", metric + ".le." + histogram.getUpperBound(i), histogram.getBucket(i));
+        }
+    }
+
+    private static void writeCsvLine(Writer out, String section, String name, String host, String metric, long value)
+            throws IOException {
+        out.write(section + "," + csvField(name) + "," + csvField(host) + "," + metric + "," + value + "\n");
+    }
+
+    private static String csvField(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0) { return field; }
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String quote(String string) {
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : string.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+}
@@ -0,0 +1,157 @@
+package master;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Virtual partitions of the words, a word going to partition `hash mod count` like in the slaves.
+ * There are more partitions than machines, and each machine reduces the partitions it is given
+ * by `assign`, so the work is spread by the size of the partitions rather than one per machine.
+ *
+ * The size of each partition is estimated on chunks sampled across the input. Mappers combine
+ * their split, so a frequent word like "de" costs its reducer one record per split however often
+ * it appears: a partition weighs the bytes of the distinct words of each chunk, not their counts.
+ */
+public class Partitions {
+
+    // Properties
+
+    // Estimated bytes of the runs of each partition
+    private final long[] weights;
+
+    // Getters
+
+    public int getCount() { return this.weights.length; }
+
+    public long getWeight(int partition) { return this.weights[partition]; }
+
+    // Constructors
+
+    private Partitions(int count) {
+        this.weights = new long[count];
+    }
+
+    /**
+     * Estimates the weight of `count` partitions of `filePath` from `Constants.sampleChunks`
+     * chunks spread evenly over the file.
+     */
+    public static Partitions sample(String filePath, int count) {
+        Partitions partitions = new Partitions(count);
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            int chunks = (int) Math.max(1, Math.min(Constants.sampleChunks, fileSize / Constants.sampleChunkSize));
+            for (int c = 0; c < chunks; ++c) {
+                long start = fileSize * c / chunks;
+                ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(Constants.sampleChunkSize, fileSize - start));
+                while (chunk.hasRemaining() && channel.read(chunk, start + chunk.position()) > 0) { }
+                partitions.addChunk(chunk.array(), chunk.position(), start > 0, start + chunk.position() < fileSize);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        return partitions;
+    }
+
+    // Methods
+
+    /**
+     * Returns the machine reducing each partition. Partitions are placed heaviest first on the
+     * machine with the least weight so far, or the fewest partitions if the weights are equal.
+     */
+    public List<String> assign(List<String> machines) {
+        long[] loads = new long[machines.size()];
+        int[] counts = new int[machines.size()];
+        String[] reducers = new String[weights.length];
+
+        List<Integer> heaviestFirst = IntStream.range(0, weights.length).boxed()
+            .sorted(Comparator.comparingLong((Integer p) -> weights[p]).reversed())
+            .collect(Collectors.toList());
+        for (int p : heaviestFirst) {
+            int machine = 0;
+            for (int m = 1; m < machines.size(); ++m) {
+                if (loads[m] < loads[machine] || (loads[m] == loads[machine] && counts[m] < counts[machine])) {
+                    machine = m;
+                }
+            }
+            reducers[p] = machines.get(machine);
+            loads[machine] += weights[p];
+            counts[machine]++;
+        }
+        return List.of(reducers);
+    }
+
+    /**
+     * Share of the estimated weight reduced by each machine of `reducers`, e.g. `vm1 52%, vm2 48%`.
+     */
+    public String describe(List<String> reducers) {
+        long total = Math.max(1, IntStream.range(0, weights.length).mapToLong(p -> weights[p]).sum());
+        return reducers.stream().distinct()
+            .map(machine -> {
+                long load = IntStream.range(0, weights.length)
+                    .filter(p -> reducers.get(p).equals(machine))
+                    .mapToLong(p -> weights[p])
+                    .sum();
+                return machine + " " + Math.round(100.0 * load / total) + "%";
+            })
+            .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Same hash as the slaves, over the UTF-8 bytes of a word.
+     */
+    static int hash(byte[] key, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            h = 31 * h + key[i];
+        }
+        return h;
+    }
+
+    /**
+     * Adds the distinct words of the first `length` bytes of `chunk`. Words cut by the start or
+     * the end of the chunk are skipped.
+     */
+    private void addChunk(byte[] chunk, int length, boolean cutStart, boolean cutEnd) {
+        Set<String> words = new HashSet<>();
+        int start = 0;
+        if (cutStart) {
+            while (start < length && !isWhitespace(chunk[start])) { start++; }
+        }
+        int end = length;
+        if (cutEnd) {
+            while (end > start && !isWhitespace(chunk[end - 1])) { end--; }
+        }
+
+        int wordStart = -1;
+        for (int i = start; i <= end; ++i) {
+            if (i < end && !isWhitespace(chunk[i])) {
+                if (wordStart == -1) { wordStart = i; }
+                continue;
+            }
+            if (wordStart != -1) {
+                int wordLength = i - wordStart;
+                // Latin-1 keeps one char per byte, the set only needs to tell words apart
+                if (words.add(new String(chunk, wordStart, wordLength, StandardCharsets.ISO_8859_1))) {
+                    // The word, its varint length and a small count, as in a run
+                    weights[Math.floorMod(hash(chunk, wordStart, wordLength), weights.length)] += wordLength + 2;
+                }
+                wordStart = -1;
+            }
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+}
@@ -0,0 +1,117 @@
+package master;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the ssh and scp sessions of `ProcessRunner`s on a bounded pool of threads instead of
+ * one thread each, with at most `sessionsPerHost` of them open to the same machine at a time.
+ * Runners over the limit of their machine wait in its queue without holding a thread,
+ * so a busy machine doesn't delay the others.
+ */
+public class ProcessExecutor {
+
+    // Host
+
+    private static class Host {
+
+        final Deque<FutureTask<?>> pending = new ArrayDeque<>();
+
+        int running = 0;
+    }
+
+    private static ProcessExecutor shared = null;
+
+    // Properties
+
+    private final ExecutorService executor;
+
+    private final int sessionsPerHost;
+
+    private final Map<String, Host> hosts = new HashMap<>();
+
+    // Constructors
+
+    public ProcessExecutor(int threads, int sessionsPerHost) {
+        AtomicInteger nextThread = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "process-" + nextThread.getAndIncrement());
+            // Idle threads don't keep the JVM alive
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sessionsPerHost = sessionsPerHost;
+    }
+
+    /**
+     * Executor shared by the whole program, limited by `Constants.processThreads` and
+     * `Constants.sessionsPerHost`.
+     */
+    public static synchronized ProcessExecutor shared() {
+        if (shared == null) {
+            shared = new ProcessExecutor(Constants.processThreads, Constants.sessionsPerHost);
+        }
+        return shared;
+    }
+
+    // Methods
+
+    /**
+     * Queues `task`, which opens sessions to `host`, and returns its result once it ran.
+     */
+    public <T> Future<T> submit(String host, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        synchronized (this) {
+            hosts.computeIfAbsent(host, name -> new Host()).pending.add(future);
+            dispatch(host);
+        }
+        return future;
+    }
+
+    /**
+     * Waits for `future`, false if it failed or the wait was interrupted.
+     */
+    public static boolean await(Future<Boolean> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return false;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Starts the runners queued for `name` as long as it is under its limit.
+     */
+    private synchronized void dispatch(String name) {
+        Host host = hosts.get(name);
+        while (host.running < sessionsPerHost && !host.pending.isEmpty()) {
+            FutureTask<?> task = host.pending.poll();
+            host.running++;
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    synchronized (this) {
+                        host.running--;
+                        dispatch(name);
+                    }
+                }
+            });
+        }
+    }
+
+}
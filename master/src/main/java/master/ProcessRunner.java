@@ -2,12 +2,14 @@ package master;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.IntStream;
 
 /**
  * Run the process created by process builders waiting the specified timeout.
  * Processes run sequentially in the order they are added. 
+ * A process that can't start, times out or exits with a non-zero code fails the runner,
+ * and the processes after it are not run.
  */
 public class ProcessRunner implements Runnable {
 
@@ -21,6 +23,11 @@ public class ProcessRunner implements Runnable {
 
     private boolean didStartRunning = false;
 
+    private volatile boolean failed = false;
+
+    // Spent connecting to the machines and starting the processes
+    private long startNanos = 0;
+
     // <DEBUG>
     private static int nextId = 0;
     private static synchronized int createNextId() {
@@ -37,6 +44,47 @@ public class ProcessRunner implements Runnable {
 
     public ProcessRunner() {this.id = ProcessRunner.createNextId();} // DEBUG
 
+    /**
+     * True once every process ran and exited with 0.
+     */
+    public boolean isSuccessful() {
+        return didStartRunning && !failed;
+    }
+
+    /**
+     * Time spent connecting and starting the processes that ran so far.
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Queues this runner on the shared `ProcessExecutor` within the limit of `host`. Its result is
+     * true if every one of its processes succeeded. It is measured as the task `name` of `Metrics`, e.g. `COPY 3`.
+     */
+    public Future<Boolean> submit(String host, String name) {
+        Metrics.Task task = Metrics.shared().task(name, host);
+        return ProcessExecutor.shared().submit(host, () -> {
+            task.started();
+            boolean success = false;
+            try {
+                run();
+                success = isSuccessful();
+            } finally {
+                task.addStartLatency(getStartNanos());
+                Metrics.shared().finish(task, success);
+            }
+            return success;
+        });
+    }
+
+    /**
+     * Same as `submit(host, name)`, waiting for the result.
+     */
+    public boolean execute(String host, String name) {
+        return ProcessExecutor.await(submit(host, name));
+    }
+
     public void addProcess(ProcessBuilder pb, long timeout) throws AlreadyRunningException {
         if (didStartRunning) {
             throw new AlreadyRunningException();
@@ -52,39 +100,56 @@ public class ProcessRunner implements Runnable {
         // }
         didStartRunning = true;
         if (processBuilders.size() == 0) { return; }
-        IntStream.range(0, processBuilders.size())
-            .forEach(i -> {
-                runFromProcessBuilder(processBuilders.get(i), timeouts.get(i));
-                // System.out.println("[ProcessRunner" + id + "] Done " + ConnectionTester.getIdForProcessBuilder(processBuilders.get(i))); // DEBUG
-            });
+        for (int i = 0; i < processBuilders.size() && !failed; ++i) {
+            failed = !runFromProcessBuilder(processBuilders.get(i), timeouts.get(i));
+            // System.out.println("[ProcessRunner" + id + "] Done " + ConnectionTester.getIdForProcessBuilder(processBuilders.get(i))); // DEBUG
+        }
     }
 
-    private void runFromProcessBuilder(ProcessBuilder pb, long timeout) {
+    /**
+     * Returns true if the process exited with 0 before `timeout`.
+     */
+    private boolean runFromProcessBuilder(ProcessBuilder pb, long timeout) {
         pb.redirectErrorStream(true);
         
         Process p = null;
+        long startTime = System.nanoTime();
         try {
+            SshConnections.connect(pb);
             p = pb.start();
         } catch (IOException e) {
-            System.err.println("Error starting process");
-            System.exit(1);
+            System.err.println("[ProcessRunner" + id + "] Error starting " + pb.command());
+            return false;
+        } finally {
+            startNanos += System.nanoTime() - startTime;
         }
 
-        boolean b;
+        boolean exited = false;
         try {
-            b = p.waitFor(timeout, TimeUnit.MILLISECONDS);
-            if (!b) {
+            exited = p.waitFor(timeout, TimeUnit.MILLISECONDS);
+            if (!exited) {
                 System.out.println("[ProcessRunner" + id + "] Timeout " + ConnectionTester.getIdForProcessBuilder(pb)); // DEBUG
             }
         } catch (InterruptedException e) {
             e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+        if (!exited) {
+            // Also ends the output of the process for `onComplete`
+            p.destroy();
         }
 
-        if (onComplete == null) { return; }
-
-        onComplete.onComplete(p);
+        if (onComplete != null) {
+            onComplete.onComplete(p);
+            p.destroy();
+        }
 
-        p.destroy();
+        if (!exited) { return false; }
+        if (p.exitValue() != 0) {
+            System.err.println("[ProcessRunner" + id + "] " + pb.command() + " exited with " + p.exitValue());
+            return false;
+        }
+        return true;
     }
 
 }
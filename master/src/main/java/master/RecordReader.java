@@ -0,0 +1,176 @@
+package master;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads the records written by the workers' `RecordWriter`, one block at a time. The word of the current record is
+ * left in the block buffer, so reading a record allocates nothing unless `getKey()` is called.
+ * Only uncompressed blocks are supported, which is how the workers write reduce files.
+ * A block whose checksum doesn't match or that ends early fails the read with the file name.
+ */
+public class RecordReader implements Closeable {
+
+    // Same format as `slave.RecordWriter`
+    private static final int magic = 0x57435232; // "WCR2"
+    private static final int blockSize = 64 * 1024;
+
+    // Properties
+
+    private final String fileName;
+
+    private final DataInputStream in;
+
+    private final CRC32C checksum = new CRC32C();
+
+    private byte[] block = new byte[blockSize];
+
+    private ByteBuffer blockBuffer = ByteBuffer.wrap(block);
+
+    private int blockLength = 0;
+
+    private int position = 0;
+
+    private int remainingRecords = 0;
+
+    private int keyOffset = 0;
+
+    private int keyLength = 0;
+
+    private long count = 0;
+
+    // Getters
+
+    /**
+     * Array holding the word of the current record, valid until the next call to `next()`.
+     */
+    public byte[] getKeyBytes() { return this.block; }
+
+    /**
+     * Same array as `getKeyBytes()`, wrapped once per block.
+     */
+    public ByteBuffer getKeyBuffer() { return this.blockBuffer; }
+
+    public int getKeyOffset() { return this.keyOffset; }
+
+    public int getKeyLength() { return this.keyLength; }
+
+    public long getCount() { return this.count; }
+
+    public String getKey() {
+        return new String(block, keyOffset, keyLength, StandardCharsets.UTF_8);
+    }
+
+    // Constructors
+
+    public RecordReader(String fileName) throws IOException {
+        this(fileName, new FileInputStream(fileName));
+    }
+
+    /**
+     * Reads the records of `input`, e.g. a reduce file streamed from its worker. `name` only shows in errors.
+     */
+    public RecordReader(String name, InputStream input) throws IOException {
+        this.fileName = name;
+        this.in = new DataInputStream(new BufferedInputStream(input, 1 << 16));
+        try {
+            if (in.readInt() != magic) {
+                throw new IOException(fileName + " is not a record file");
+            }
+        } catch (EOFException e) {
+            in.close();
+            throw new IOException(fileName + " is not a record file", e);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // Methods
+
+    /**
+     * Moves to the next record. Returns false once the file is exhausted.
+     */
+    public boolean next() throws IOException {
+        while (remainingRecords == 0) {
+            if (!readBlock()) { return false; }
+        }
+
+        keyLength = (int) getVarint();
+        keyOffset = position;
+        position += keyLength;
+        if (keyLength < 0 || position > blockLength) {
+            throw new IOException("Malformed record in " + fileName);
+        }
+        count = getVarint();
+        remainingRecords--;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean readBlock() throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+
+        try {
+            int rawLength = in.readInt();
+            int records = in.readInt();
+            byte codecId = in.readByte();
+            if (length < 0 || rawLength != length || records < 0) {
+                throw new IOException("Malformed block in " + fileName);
+            }
+            if (codecId != 0) {
+                throw new IOException("Compressed block with codec " + codecId + " in " + fileName);
+            }
+            if (length > block.length) {
+                block = new byte[length];
+                blockBuffer = ByteBuffer.wrap(block);
+            }
+            in.readFully(block, 0, length);
+            int expected = in.readInt();
+
+            checksum.reset();
+            checksum.update(block, 0, length);
+            if ((int) checksum.getValue() != expected) {
+                throw new IOException("Checksum mismatch in " + fileName);
+            }
+
+            blockLength = length;
+            position = 0;
+            remainingRecords = records;
+            return true;
+        } catch (EOFException e) {
+            throw new IOException("Truncated block in " + fileName, e);
+        }
+    }
+
+    private long getVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= blockLength) {
+                throw new IOException("Malformed record in " + fileName);
+            }
+            byte b = block[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) { return value; }
+        }
+        throw new IOException("Malformed record in " + fileName);
+    }
+
+}
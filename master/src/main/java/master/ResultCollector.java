@@ -0,0 +1,121 @@
+package master;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Writes the results file from the reduce files of every partition, as `word count` lines.
+ * Each reduce file is already sorted, by word or by count, so they are merged k-way into one
+ * globally sorted file while they are read, holding a single record per partition in memory.
+ * Partitions don't share words, so every line comes from exactly one of them.
+ * Lines go through a single buffered writer and words are copied as the UTF-8 bytes they were
+ * reduced as, without being decoded.
+ */
+public class ResultCollector {
+
+    // Properties
+
+    private final OutputStream out;
+
+    private final byte[] digits = new byte[20];
+
+    // Constructors
+
+    private ResultCollector(String outputFile) throws IOException {
+        this.out = new BufferedOutputStream(new FileOutputStream(outputFile), Constants.resultsBufferSize);
+    }
+
+    // Methods
+
+    /**
+     * Merges `sources` into `outputFile`, by decreasing count if `byCount` is set and by word otherwise.
+     * The sources must be sorted in that order, and are closed once merged.
+     */
+    public static void collect(List<RecordReader> sources, String outputFile, boolean byCount) throws IOException {
+        Comparator<RecordReader> order = byCount ? ResultCollector::compareByCount : ResultCollector::compareByWord;
+        PriorityQueue<RecordReader> heap = new PriorityQueue<>(Math.max(1, sources.size()), order);
+
+        try {
+            ResultCollector collector = new ResultCollector(outputFile);
+            try {
+                for (RecordReader source : sources) {
+                    if (source.next()) {
+                        heap.add(source);
+                    }
+                }
+                while (!heap.isEmpty()) {
+                    RecordReader source = heap.poll();
+                    collector.write(source);
+                    if (source.next()) {
+                        heap.add(source);
+                    }
+                }
+            } finally {
+                collector.out.close();
+            }
+        } finally {
+            for (RecordReader source : sources) {
+                try { source.close(); } catch (Exception e) { }
+            }
+        }
+    }
+
+    private void write(RecordReader source) throws IOException {
+        out.write(source.getKeyBytes(), source.getKeyOffset(), source.getKeyLength());
+        out.write(' ');
+        long count = source.getCount();
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + count % 10);
+            count /= 10;
+        } while (count > 0);
+        out.write(digits, position, digits.length - position);
+        out.write('\n');
+    }
+
+    private static int compareByWord(RecordReader x, RecordReader y) {
+        return compare(
+            x.getKeyBytes(), x.getKeyOffset(), x.getKeyLength(),
+            y.getKeyBytes(), y.getKeyOffset(), y.getKeyLength()
+        );
+    }
+
+    private static int compareByCount(RecordReader x, RecordReader y) {
+        if (x.getCount() != y.getCount()) {
+            return Long.compare(y.getCount(), x.getCount());
+        }
+        return compareByWord(x, y);
+    }
+
+    /**
+     * Compares two UTF-8 words in the order `String.compareTo` gives once they are decoded,
+     * which is the order of the reduce files (see `slave.CountTable.compare`).
+     */
+    private static int compare(byte[] a, int offsetA, int lengthA, byte[] b, int offsetB, int lengthB) {
+        int length = Math.min(lengthA, lengthB);
+        for (int i = 0; i < length; ++i) {
+            byte byteA = a[offsetA + i];
+            byte byteB = b[offsetB + i];
+            if (byteA != byteB) {
+                return rank(byteA) - rank(byteB);
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    /**
+     * Rank of a byte in UTF-16 order. Bytes are compared unsigned, except that the lead bytes of
+     * U+E000 to U+FFFF (0xEE, 0xEF) go after the ones of supplementary characters (0xF0 to 0xF4),
+     * which are surrogate pairs and therefore sort lower in a Java String.
+     */
+    private static int rank(byte b) {
+        int value = b & 0xFF;
+        return value == 0xEE || value == 0xEF ? value + 0x10 : value;
+    }
+
+}
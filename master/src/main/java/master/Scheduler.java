@@ -0,0 +1,70 @@
+package master;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs a graph of tasks. A task starts as soon as the tasks it depends on are done instead of
+ * waiting for every task of the previous phase, so one slow machine only delays its own successors.
+ * A task that throws fails every task depending on it.
+ */
+public class Scheduler {
+
+    // Properties
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final List<String> names = new ArrayList<>();
+
+    private final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+    // Methods
+
+    public synchronized CompletableFuture<Void> submit(String name, Runnable task, CompletableFuture<?>... dependencies) {
+        CompletableFuture<Void> ready = CompletableFuture.allOf(dependencies);
+        CompletableFuture<Void> future = ready.thenRunAsync(() -> {
+            long startTime = System.nanoTime();
+            task.run();
+            App.log(name + " FINISHED", new App.MeasuredTime(System.nanoTime() - startTime));
+        }, executor);
+
+        names.add(name);
+        tasks.add(future);
+        return future;
+    }
+
+    /**
+     * Waits for every submitted task. Returns false if any of them failed.
+     */
+    public boolean awaitAll() {
+        boolean success = true;
+        // Running tasks may submit new ones, the list is read again after each join
+        for (int i = 0; i < taskCount(); ++i) {
+            CompletableFuture<Void> task;
+            String name;
+            synchronized (this) {
+                task = tasks.get(i);
+                name = names.get(i);
+            }
+            try {
+                task.join();
+            } catch (Exception e) {
+                System.err.println("[Scheduler] " + name + " failed: " + e.getCause());
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    private synchronized int taskCount() {
+        return tasks.size();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
@@ -1,38 +1,89 @@
 package master;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
 
 public class Splits {
 
+    // Bytes mapped at a time while looking for the whitespace that ends a split
+    private static final int scanWindow = 64 * 1024;
+
     // Properties
 
     final private String filePath;
 
-    final long minSplitSize = 1;
+    final private boolean shared;
+
+    final private long splitSize;
 
     private int splitsCount;
 
+    private long[] offsets;
+
+    private long[] lengths;
+
     // Getters
 
     public int getSplitsCount() { return this.splitsCount; }
 
+    public String getFilePath() { return this.filePath; }
+
+    /**
+     * True if the workers read the splits directly from `filePath` instead of a copy.
+     */
+    public boolean isShared() { return this.shared; }
+
+    public long getOffset(int i) { return this.offsets[i]; }
+
+    public long getLength(int i) { return this.lengths[i]; }
+
+    public long[] getOffsets() { return this.offsets.clone(); }
+
+    public long[] getLengths() { return this.lengths.clone(); }
+
     // Constructors
-    
-    private Splits(String filePath, int splitCount) {
+
+    private Splits(String filePath, long splitSize, boolean shared) {
         this.filePath = filePath;
-        this.splitsCount = splitCount;
+        this.splitSize = splitSize;
+        this.shared = shared;
+    }
+
+    public static Splits create(String filePath, long splitSize) {
+        return create(filePath, splitSize, false);
     }
 
-    public static Splits create(String filePath, int machineCount) {
-        Splits splits = new Splits(filePath, machineCount);
+    /**
+     * Splits `filePath` into ranges of about `splitSize` bytes ending on whitespace.
+     * The number of splits only depends on the size of the file, not on the number of machines.
+     * Unless `shared` is set, each range is also copied to its own split file.
+     */
+    public static Splits create(String filePath, long splitSize, boolean shared) {
+        Splits splits = new Splits(filePath, splitSize, shared);
         splits.prepare();
         return splits;
     }
 
+    /**
+     * Splits `filePath` at the ranges found by an earlier `create`, e.g. when a job is resumed.
+     * Only the split files that are missing or don't have the size of their range are copied again.
+     */
+    public static Splits restore(String filePath, long splitSize, boolean shared, long[] offsets, long[] lengths) {
+        Splits splits = new Splits(filePath, splitSize, shared);
+        splits.splitsCount = offsets.length;
+        splits.offsets = offsets;
+        splits.lengths = lengths;
+        if (!shared) {
+            splits.copySplits(true);
+        }
+        return splits;
+    }
+
     // Methods
 
     public String getFileForSplit(int i) {
@@ -50,78 +101,87 @@ public class Splits {
         }
     }
 
-    private void prepare() {
-        createSplitsDirectory();
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
 
-        File file = null;
-        BufferedReader reader = null;
-        Long fileSize = null;
-        
-        try {
-            file = new File(filePath);
-            reader = new BufferedReader(new FileReader(file));
-            fileSize = file.length();
+    /**
+     * Returns the first position at or after `position` that follows a whitespace byte,
+     * or the end of the file. Whitespace bytes never appear inside a UTF-8 sequence,
+     * so this never cuts a word or a character in half.
+     */
+    private static long alignToWhitespace(FileChannel channel, long position, long fileSize) throws IOException {
+        if (position <= 0) { return 0; }
+
+        long start = position - 1;
+        while (start < fileSize) {
+            long size = Math.min(scanWindow, fileSize - start);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            for (int i = 0; i < size; ++i) {
+                if (isWhitespace(window.get(i))) {
+                    return start + i + 1;
+                }
+            }
+            start += size;
+        }
+        return fileSize;
+    }
+
+    private void prepare() {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+
+            // The file is cut in `splitsCount` ranges of similar size `approxSplitSize`, close to `splitSize`
+            long count = (fileSize + splitSize - 1) / splitSize;
+            this.splitsCount = (int) Math.max(1, count);
+            long approxSplitSize = fileSize / splitsCount;
+
+            // Only the bytes around each boundary are read
+            offsets = new long[splitsCount];
+            lengths = new long[splitsCount];
+            long offset = 0;
+            for (int i = 0; i < splitsCount; ++i) {
+                long end = i == splitsCount - 1
+                    ? fileSize
+                    : alignToWhitespace(channel, Math.max(offset, (i + 1) * approxSplitSize), fileSize);
+                offsets[i] = offset;
+                lengths[i] = end - offset;
+                offset = end;
+            }
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(1);
         }
 
-        // Normally, the splits will have similar size `approxSplitSize`. If this generates too small splits \
-        // the number of splits is recalculated so that the splits have a size close to `minSplitSize`
-        long approxSplitSize = fileSize / splitsCount;
-        if (approxSplitSize < minSplitSize) {
-            Double count = Math.ceil(fileSize / minSplitSize);
-            this.splitsCount = count.intValue();
-            approxSplitSize = fileSize / splitsCount;
+        if (!shared) {
+            copySplits(false);
         }
+    }
 
-        for (int i = 0; i < splitsCount; ++i) {
-            BufferedWriter writer = null;
-
-            // Create a buffer
-            Long minimum = Math.min(50, approxSplitSize);
-            int numBytes = minimum.intValue();
-            char[] buff = new char[numBytes];
-            long bytesRead = 0;
-            String splitFile = getFileForSplit(i);
-
-            try {
-                writer = new BufferedWriter(new FileWriter(splitFile));
-                int lastChar = 0;
-                // Read at least `approxSplitSize` using `numBytes` chunks and write to split file
-                while (bytesRead < approxSplitSize) {
-                    int readCount = reader.read(buff, 0, numBytes);
-                    if (readCount == -1) {
-                        lastChar = 0;
-                        break;
-                    }
-                    writer.write(buff, 0, readCount);
-                    bytesRead += readCount;
-                    lastChar = buff[readCount - 1];
-                }
-                // Read until we find a ' ' or '\n' to avoid spliting words in half
-                int extraChars = 0;
-                while (lastChar != ' ' && lastChar != '\n' && lastChar != 0) {
-                    lastChar = reader.read();
-                    buff[extraChars] = (char) lastChar;
-                    extraChars++;
-                    // Avoid overflowing buff if a file has a huge word
-                    if (extraChars == numBytes) {
-                        writer.write(buff, 0, extraChars);
-                        extraChars = 0;
-                    }
-                }
-                // Writing the extra characters until the whitespace
-                writer.write(buff, 0, extraChars);
+    /**
+     * Writes every range to its split file, all at the same time. With `onlyMissing`, the split files
+     * that already have the length of their range are kept.
+     */
+    private void copySplits(boolean onlyMissing) {
+        createSplitsDirectory();
 
+        IntStream.range(0, splitsCount).parallel().forEach(i -> {
+            if (onlyMissing && new File(getFileForSplit(i)).length() == lengths[i]) { return; }
+            try (FileChannel in = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(Paths.get(getFileForSplit(i)),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long position = offsets[i];
+                long remaining = lengths[i];
+                while (remaining > 0) {
+                    long transferred = in.transferTo(position, remaining, out);
+                    position += transferred;
+                    remaining -= transferred;
+                }
             } catch (Exception e) {
                 e.printStackTrace();
                 System.exit(1);
-            } finally {
-                try { writer.close(); } catch (Exception e) { }
             }
-        }
-        try { reader.close(); } catch (Exception e) { }
+        });
     }
 
 }
@@ -0,0 +1,112 @@
+package master;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The `k` most frequent words seen so far, kept in a min-heap whose head is the least frequent of them.
+ * Adding a word costs at most a `log k` update and words that can't make it are dropped right away,
+ * so the whole vocabulary is never sorted.
+ * Ties on the count are broken by word, so the result doesn't depend on the order words are added in.
+ */
+public class TopWords {
+
+    // Entry
+
+    public static class Entry {
+
+        public final String word;
+        public final long count;
+
+        Entry(String word, long count) {
+            this.word = word;
+            this.count = count;
+        }
+    }
+
+    // Most frequent first
+    private static final Comparator<Entry> order = Comparator
+        .comparingLong((Entry entry) -> entry.count).reversed()
+        .thenComparing(entry -> entry.word);
+
+    // Properties
+
+    private final int k;
+
+    private final PriorityQueue<Entry> heap;
+
+    // Constructors
+
+    public TopWords(int k) {
+        this.k = k;
+        this.heap = new PriorityQueue<>(Math.max(1, k), order.reversed());
+    }
+
+    // Methods
+
+    public void add(String word, long count) {
+        if (k <= 0) { return; }
+        if (heap.size() < k) {
+            heap.add(new Entry(word, count));
+            return;
+        }
+
+        Entry last = heap.peek();
+        if (count < last.count || (count == last.count && word.compareTo(last.word) >= 0)) { return; }
+        heap.poll();
+        heap.add(new Entry(word, count));
+    }
+
+    /**
+     * The entries, most frequent first.
+     */
+    public List<Entry> getSorted() {
+        List<Entry> entries = new ArrayList<>(heap);
+        entries.sort(order);
+        return entries;
+    }
+
+    /**
+     * Adds every `word count` line of `fileName`, e.g. the top words written by another `TopWords`.
+     */
+    public void addFromFile(String fileName) throws IOException {
+        FileReader fr = new FileReader(fileName, StandardCharsets.UTF_8);
+        try (BufferedReader br = new BufferedReader(fr)) {
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                int separator = line.lastIndexOf(' ');
+                if (separator < 0) {
+                    throw new IOException("Malformed line \"" + line + "\" in " + fileName);
+                }
+                try {
+                    add(line.substring(0, separator), Long.parseLong(line.substring(separator + 1)));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed line \"" + line + "\" in " + fileName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes one `word count` line per entry, most frequent first.
+     */
+    public void write(String fileName) throws IOException {
+        FileWriter fw = new FileWriter(fileName, StandardCharsets.UTF_8);
+        try (BufferedWriter bw = new BufferedWriter(fw)) {
+            for (Entry entry : getSorted()) {
+                bw.write(entry.word);
+                bw.write(' ');
+                bw.write(Long.toString(entry.count));
+                bw.write('\n');
+            }
+        }
+    }
+
+}
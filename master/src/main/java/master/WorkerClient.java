@@ -0,0 +1,263 @@
+package master;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Connections to the slave daemon (`java -jar slave.jar 4`) running on a machine.
+ * Connections are opened once and every phase is sent as a command on one of them.
+ * Commands are the arguments of a one-shot slave run, e.g. `2 0 4` to reduce partition 0.
+ * The daemon runs one command at a time per connection, so concurrent commands to the same
+ * machine (a reduce waiting for its runs while the map runs) each get their own connection,
+ * which is kept for the next command once it is done.
+ * Commands sent with a task id can be cancelled from another connection, e.g. the map attempt
+ * that lost against its speculative backup.
+ * The daemon follows `OK` with the counters of the command, which measured commands add to their
+ * `Metrics.Task`.
+ * A command fails if the daemon answers an error, closes the connection or doesn't answer in time;
+ * `isAlive()` then tells a dead machine from a failed task.
+ * Each connection starts with `AUTH` and the token `deploy` left in `Constants.tokenFile`.
+ */
+public class WorkerClient {
+
+    private static final String authCommand = "AUTH";
+    private static final String okReply = "OK";
+    private static final String shutdownCommand = "SHUTDOWN";
+    private static final String taskCommand = "TASK";
+    private static final String cancelCommand = "CANCEL";
+
+    // Milliseconds a live daemon takes at most to accept a connection
+    private static final int aliveTimeout = 2000;
+
+    // Connection
+
+    private static class Connection {
+
+        final Socket socket;
+        final BufferedReader in;
+        final PrintWriter out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            // Notices machines that went away without closing the connection
+            socket.setKeepAlive(true);
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        void close() {
+            try { out.close(); } catch (Exception e) { }
+            try { in.close(); } catch (Exception e) { }
+            try { socket.close(); } catch (Exception e) { }
+        }
+    }
+
+    // Properties
+
+    public final String machine;
+
+    private final int port;
+
+    private final String token;
+
+    private final Deque<Connection> idleConnections = new ArrayDeque<>();
+
+    private final List<Connection> connections = new ArrayList<>();
+
+    // Constructors
+
+    private WorkerClient(String machine, int port, String token) {
+        this.machine = machine;
+        this.port = port;
+        this.token = token;
+    }
+
+    /**
+     * Connects to the daemon on `machine`, retrying while it is still starting up.
+     */
+    public static WorkerClient connect(String machine, int port, int attempts) throws IOException {
+        Path tokenFile = Paths.get(Constants.tokenFile);
+        if (!Files.exists(tokenFile)) {
+            throw new IOException("No token in " + tokenFile + ", deploy the jar first");
+        }
+        String token = new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8).trim();
+        WorkerClient client = new WorkerClient(machine, port, token);
+        IOException lastError = null;
+        for (int i = 0; i < attempts; ++i) {
+            try {
+                client.release(client.open());
+                return client;
+            } catch (IOException e) {
+                lastError = e;
+            }
+            try {
+                Thread.sleep(250);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw lastError != null ? lastError : new IOException("Unable to connect to " + machine);
+    }
+
+    // Methods
+
+    /**
+     * Sends `command` and waits for the daemon to finish running it.
+     * Returns true if the daemon reported success.
+     */
+    public boolean execute(String command) {
+        return execute(command, 0);
+    }
+
+    /**
+     * Same as `execute(command)`, but gives up after `timeout` milliseconds, 0 waiting forever.
+     */
+    public boolean execute(String command, long timeout) {
+        return send(null, command, timeout);
+    }
+
+    /**
+     * Same as `execute(command, timeout)`, measured as `task` with the counters the daemon replied.
+     */
+    public boolean execute(Metrics.Task task, String command, long timeout) {
+        boolean success = false;
+        try {
+            success = send(task, command, timeout);
+        } finally {
+            Metrics.shared().finish(task, success);
+        }
+        return success;
+    }
+
+    /**
+     * Same as `execute(task, command, timeout)` for a command that `cancel(taskId)` can interrupt.
+     * A task that timed out is cancelled, so it doesn't keep the machine busy.
+     */
+    public boolean execute(Metrics.Task task, String taskId, String command, long timeout) {
+        long startTime = System.nanoTime();
+        boolean success = execute(task, taskCommand + " " + taskId + " " + command, timeout);
+        if (!success && timeout > 0 && System.nanoTime() - startTime >= timeout * 1000000) {
+            cancel(taskId);
+        }
+        return success;
+    }
+
+    /**
+     * Sends `command`, adding the counters that follow `OK` in the reply to `task` unless it is null.
+     */
+    private boolean send(Metrics.Task task, String command, long timeout) {
+        if (task != null) { task.started(); }
+        Connection connection = null;
+        try {
+            connection = acquire();
+            connection.socket.setSoTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+            connection.out.println(command);
+            String reply = connection.in.readLine();
+            if (reply == null) {
+                System.err.println("[WorkerClient] " + machine + " closed the connection on \"" + command + "\"");
+                discard(connection);
+                return false;
+            }
+            release(connection);
+            if (!reply.equals(okReply) && !reply.startsWith(okReply + " ")) {
+                System.err.println("[WorkerClient] " + machine + " failed \"" + command + "\": " + reply);
+                return false;
+            }
+            if (task != null) {
+                task.addCounters(reply.substring(okReply.length()));
+            }
+            return true;
+        } catch (SocketTimeoutException e) {
+            System.err.println("[WorkerClient] " + machine + " timed out on \"" + command + "\"");
+            // The reply may still come, the connection can't be used for another command
+            discard(connection);
+            return false;
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (connection != null) { discard(connection); }
+            return false;
+        }
+    }
+
+    /**
+     * Asks the daemon to stop the command sent with `taskId`, if it is still running.
+     * The cancelled `execute` call then returns false.
+     */
+    public void cancel(String taskId) {
+        execute(cancelCommand + " " + taskId);
+    }
+
+    /**
+     * True if the daemon still accepts connections.
+     */
+    public boolean isAlive() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(machine, port), aliveTimeout);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void shutdown() {
+        execute(shutdownCommand);
+        close();
+    }
+
+    public synchronized void close() {
+        connections.forEach(Connection::close);
+        connections.clear();
+        idleConnections.clear();
+    }
+
+    private Connection open() throws IOException {
+        Connection connection = new Connection(new Socket(machine, port));
+        try {
+            connection.socket.setSoTimeout(aliveTimeout);
+            connection.out.println(authCommand + " " + token);
+            String reply = connection.in.readLine();
+            if (!okReply.equals(reply)) {
+                throw new IOException(machine + " refused the token: " + reply);
+            }
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        synchronized (this) {
+            connections.add(connection);
+        }
+        return connection;
+    }
+
+    private Connection acquire() throws IOException {
+        synchronized (this) {
+            Connection connection = idleConnections.poll();
+            if (connection != null) { return connection; }
+        }
+        return open();
+    }
+
+    private synchronized void release(Connection connection) {
+        idleConnections.push(connection);
+    }
+
+    private synchronized void discard(Connection connection) {
+        connection.close();
+        connections.remove(connection);
+    }
+
+}
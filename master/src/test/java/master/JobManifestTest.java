@@ -0,0 +1,150 @@
+package master;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobManifestTest {
+
+    // Properties
+
+    private Path directory;
+
+    private String input;
+
+    private String manifestFile;
+
+    // Methods
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("manifest");
+        input = directory.resolve("input.txt").toString();
+        Files.write(Path.of(input), "la sant\u00E9 publique\n".getBytes(StandardCharsets.UTF_8));
+        manifestFile = directory.resolve("job.manifest").toString();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void replaysTheStepsOfAnInterruptedJob() throws IOException {
+        writeProgress();
+
+        JobManifest manifest = open(true);
+        assertTrue(manifest.isResumed());
+        assertArrayEquals(new long[] { 0, 10 }, manifest.getOffsets());
+        assertArrayEquals(new long[] { 10, 8 }, manifest.getLengths());
+        assertEquals(Arrays.asList("vm1", "vm3"), manifest.getPartitions());
+        assertEquals("vm1", manifest.getMapMachine(0));
+        assertEquals("vm2", manifest.getMapMachine(1));
+        // Partition 1 moved to vm3 after the shuffle, which has none of its runs
+        assertTrue(manifest.isShuffled(0, 0));
+        assertFalse(manifest.isShuffled(0, 1));
+        assertEquals("vm1", manifest.getReduceMachine(0));
+        assertNull(manifest.getReduceMachine(1));
+        manifest.close();
+    }
+
+    @Test
+    public void ignoresALastLineCutShortByACrash() throws IOException {
+        writeProgress();
+        append("REDUCE 1 vm");
+
+        JobManifest manifest = open(true);
+        assertTrue(manifest.isResumed());
+        assertEquals("vm1", manifest.getReduceMachine(0));
+        assertNull(manifest.getReduceMachine(1));
+
+        // The next step is appended after the complete lines only
+        manifest.recordReduce(1, "vm3");
+        manifest.close();
+        manifest = open(true);
+        assertEquals("vm3", manifest.getReduceMachine(1));
+        manifest.close();
+    }
+
+    @Test
+    public void startsOverWithoutAllTheSplits() throws IOException {
+        JobManifest manifest = open(false);
+        manifest.close();
+        append("SPLIT 0 0 10\nSPLIT 1 10 8\nSPL");
+
+        manifest = open(true);
+        assertFalse(manifest.isResumed());
+        assertNull(manifest.getOffsets());
+        manifest.close();
+    }
+
+    @Test
+    public void startsOverAFinishedJob() throws IOException {
+        writeProgress();
+        JobManifest manifest = open(true);
+        manifest.recordDone();
+        manifest.close();
+
+        manifest = open(true);
+        assertFalse(manifest.isResumed());
+        assertNull(manifest.getMapMachine(0));
+        manifest.close();
+    }
+
+    @Test
+    public void startsOverAnotherJobOrWithoutResume() throws IOException {
+        writeProgress();
+        JobManifest manifest = JobManifest.open(manifestFile, input, 10, false, 0, "word", "lz4", 2, true);
+        assertFalse(manifest.isResumed());
+        manifest.close();
+
+        writeProgress();
+        manifest = open(false);
+        assertFalse(manifest.isResumed());
+        manifest.close();
+        assertEquals(1, Files.readAllLines(Path.of(manifestFile)).size());
+    }
+
+    private JobManifest open(boolean resume) {
+        return JobManifest.open(manifestFile, input, 10, false, 0, "word", "none", 2, resume);
+    }
+
+    /**
+     * Records a job stopped during its reduces, each step as the master does.
+     */
+    private void writeProgress() {
+        JobManifest manifest = open(false);
+        manifest.recordSplits(new long[] { 0, 10 }, new long[] { 10, 8 });
+        manifest.recordPartition(0, "vm1");
+        manifest.recordPartition(1, "vm2");
+        manifest.recordMap(0, "vm1");
+        manifest.recordShuffle(0, Arrays.asList(0, 1));
+        manifest.recordMap(1, "vm2");
+        manifest.recordShuffle(1, Arrays.asList(0));
+        manifest.recordPartition(1, "vm3");
+        manifest.recordReduce(0, "vm1");
+        manifest.close();
+    }
+
+    private void append(String text) throws IOException {
+        Files.write(Path.of(manifestFile), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+}
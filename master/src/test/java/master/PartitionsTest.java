@@ -0,0 +1,110 @@
+package master;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PartitionsTest {
+
+    // Properties
+
+    private Path directory;
+
+    // Methods
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("partitions");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void weighsTheDistinctWordsOfEachPartition() throws IOException {
+        List<String> words = Arrays.asList("la", "de", "sant\u00E9", "publique", "la", "de", "la", "x");
+        Partitions partitions = sample(String.join(" ", words) + "\n", 4);
+
+        long[] expected = new long[4];
+        for (String word : words.stream().distinct().collect(Collectors.toList())) {
+            expected[partition(word, 4)] += word.getBytes(StandardCharsets.UTF_8).length + 2;
+        }
+        assertEquals(4, partitions.getCount());
+        for (int p = 0; p < 4; ++p) {
+            assertEquals(expected[p], partitions.getWeight(p));
+        }
+    }
+
+    @Test
+    public void putsTheHeaviestPartitionAloneWhenItOutweighsTheOthers() throws IOException {
+        // One long word in a partition, one short word in each of the others
+        String[] words = new String[4];
+        StringBuilder longWord = new StringBuilder();
+        while (longWord.length() < 1000) {
+            longWord.append("publique");
+        }
+        int heaviest = partition(longWord.toString(), 4);
+        words[heaviest] = longWord.toString();
+        for (int i = 0; Arrays.asList(words).contains(null); ++i) {
+            int p = partition("w" + i, 4);
+            if (words[p] == null) { words[p] = "w" + i; }
+        }
+        Partitions partitions = sample(String.join("\n", words), 4);
+
+        List<String> reducers = partitions.assign(Arrays.asList("vm1", "vm2"));
+
+        for (int p = 0; p < 4; ++p) {
+            assertEquals(p == heaviest ? "vm1" : "vm2", reducers.get(p));
+        }
+    }
+
+    @Test
+    public void spreadsEqualPartitionsByCount() throws IOException {
+        Partitions partitions = sample("", 6);
+
+        List<String> reducers = partitions.assign(Arrays.asList("vm1", "vm2", "vm3"));
+
+        assertEquals(6, reducers.size());
+        for (String machine : Arrays.asList("vm1", "vm2", "vm3")) {
+            assertEquals(machine, 2, Collections.frequency(reducers, machine));
+        }
+    }
+
+    @Test
+    public void givesEachPartitionItsOwnMachineWhenThereAreEnough() throws IOException {
+        Partitions partitions = sample("la de sant\u00E9 publique", 3);
+
+        List<String> reducers = partitions.assign(Arrays.asList("vm1", "vm2", "vm3", "vm4"));
+
+        assertEquals(3, reducers.stream().distinct().count());
+    }
+
+    private Partitions sample(String text, int count) throws IOException {
+        Path input = directory.resolve("input.txt");
+        Files.write(input, text.getBytes(StandardCharsets.UTF_8));
+        return Partitions.sample(input.toString(), count);
+    }
+
+    private static int partition(String word, int count) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        return Math.floorMod(Partitions.hash(bytes, 0, bytes.length), count);
+    }
+
+}
@@ -0,0 +1,122 @@
+package master;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResultCollectorTest {
+
+    // Same format as `slave.RecordWriter`
+    private static final int magic = 0x57435232;
+
+    // Properties
+
+    private Path directory;
+
+    // Methods
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("results");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void mergesThePartitionsByWord() throws IOException {
+        List<RecordReader> sources = Arrays.asList(
+            reduce("b 2", "la 10", "z 1"),
+            reduce(),
+            reduce("a 1", "sant\u00E9 3", "\uE000 7"),
+            reduce("de 10", "\uD83D\uDE00 4"));
+
+        assertEquals(Arrays.asList(
+            "a 1", "b 2", "de 10", "la 10", "sant\u00E9 3", "z 1", "\uD83D\uDE00 4", "\uE000 7"),
+            collect(sources, false));
+    }
+
+    @Test
+    public void mergesThePartitionsByDecreasingCountThenByWord() throws IOException {
+        List<RecordReader> sources = Arrays.asList(
+            reduce("la 10", "b 2", "z 1"),
+            reduce("\uD83D\uDE00 7", "\uE000 7", "a 1"),
+            reduce("de 10", "sant\u00E9 3", "\u00E9 1"));
+
+        assertEquals(Arrays.asList(
+            "de 10", "la 10", "\uD83D\uDE00 7", "\uE000 7", "sant\u00E9 3", "b 2", "a 1", "z 1", "\u00E9 1"),
+            collect(sources, true));
+    }
+
+    @Test
+    public void writesAnEmptyFileWithoutRecords() throws IOException {
+        assertEquals(Arrays.asList(), collect(Arrays.asList(reduce(), reduce()), false));
+        assertEquals(Arrays.asList(), collect(new ArrayList<>(), true));
+    }
+
+    private List<String> collect(List<RecordReader> sources, boolean byCount) throws IOException {
+        Path results = directory.resolve("results.txt");
+        ResultCollector.collect(sources, results.toString(), byCount);
+        return Files.readAllLines(results, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reduce file holding the `word count` records, in a single uncompressed block like the workers write.
+     */
+    private RecordReader reduce(String... records) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        for (String record : records) {
+            String[] fields = record.split(" ");
+            byte[] word = fields[0].getBytes(StandardCharsets.UTF_8);
+            putVarint(block, word.length);
+            block.write(word);
+            putVarint(block, Long.parseLong(fields[1]));
+        }
+        byte[] data = block.toByteArray();
+        CRC32C checksum = new CRC32C();
+        checksum.update(data, 0, data.length);
+
+        String fileName = directory.resolve("RM" + directory.toFile().list().length + ".txt").toString();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(fileName))) {
+            out.writeInt(magic);
+            if (records.length > 0) {
+                out.writeInt(data.length);
+                out.writeInt(data.length);
+                out.writeInt(records.length);
+                out.writeByte(0);
+                out.write(data);
+                out.writeInt((int) checksum.getValue());
+            }
+        }
+        return new RecordReader(fileName);
+    }
+
+    private static void putVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+}
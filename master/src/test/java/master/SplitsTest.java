@@ -0,0 +1,110 @@
+package master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SplitsTest {
+
+    // Properties
+
+    private Path directory;
+
+    // Methods
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("splits");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void cutsOnlyAfterWhitespace() throws IOException {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        String[] separators = { " ", "\n", "\r\n", "\t", "  " };
+        while (text.length() < 100_000) {
+            // Multi-byte words, so a cut in the middle of a word would also cut a character
+            int length = 1 + random.nextInt(12);
+            for (int i = 0; i < length; ++i) {
+                text.append(random.nextBoolean() ? 'a' : '\u00E9');
+            }
+            text.append(separators[random.nextInt(separators.length)]);
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        for (long splitSize : new long[] { 7, 1000, 4096, 65_536, 1 << 20 }) {
+            Splits splits = create(bytes, splitSize);
+            assertCovers(bytes, splits);
+            assertEquals((int) Math.max(1, (bytes.length + splitSize - 1) / splitSize), splits.getSplitsCount());
+            for (int i = 1; i < splits.getSplitsCount(); ++i) {
+                long offset = splits.getOffset(i);
+                assertTrue(splitSize + " " + i, offset == bytes.length || isWhitespace(bytes[(int) offset - 1]));
+            }
+        }
+    }
+
+    @Test
+    public void keepsAWordLongerThanASplitInOneSplit() throws IOException {
+        StringBuilder word = new StringBuilder();
+        while (word.length() < 10_000) {
+            word.append("publique");
+        }
+        byte[] bytes = ("la " + word + " de la\n").getBytes(StandardCharsets.UTF_8);
+
+        Splits splits = create(bytes, 1000);
+        assertCovers(bytes, splits);
+        // No split starts inside the word, the ones whose range falls in it are left empty
+        for (int i = 0; i < splits.getSplitsCount(); ++i) {
+            long offset = splits.getOffset(i);
+            assertTrue(offset <= 3 || offset > 3 + word.length());
+        }
+    }
+
+    @Test
+    public void givesAnEmptyFileOneEmptySplit() throws IOException {
+        Splits splits = create(new byte[0], 1000);
+        assertEquals(1, splits.getSplitsCount());
+        assertEquals(0, splits.getOffset(0));
+        assertEquals(0, splits.getLength(0));
+    }
+
+    private Splits create(byte[] bytes, long splitSize) throws IOException {
+        Path input = directory.resolve("input.txt");
+        Files.write(input, bytes);
+        // Shared, so nothing is copied to the splits directory
+        return Splits.create(input.toString(), splitSize, true);
+    }
+
+    private static void assertCovers(byte[] bytes, Splits splits) {
+        long offset = 0;
+        for (int i = 0; i < splits.getSplitsCount(); ++i) {
+            assertEquals(offset, splits.getOffset(i));
+            assertTrue(splits.getLength(i) >= 0);
+            offset += splits.getLength(i);
+        }
+        assertEquals(bytes.length, offset);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+}
@@ -5,25 +5,50 @@ import java.util.ArrayList;
 public class App {
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Usage: java App <filename>");
+        String usage = "Usage: java App <filename> [--parallel] [--top <k>]";
+        if (args.length < 1) {
+            System.err.println(usage);
             System.exit(1);
         }
 
         String filename = args[0];
+        boolean parallel = false;
+        // Only the `top` most frequent words are kept, 0 keeps all of them
+        int top = 0;
+        for (int i = 1; i < args.length; ++i) {
+            if (args[i].equals("--parallel")) {
+                parallel = true;
+            } else if (args[i].equals("--top") && i + 1 < args.length) {
+                try {
+                    top = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    System.err.println("Illegal argument \"" + args[i] + "\" for top.");
+                    System.exit(1);
+                }
+            } else {
+                System.err.println(usage);
+                System.exit(1);
+            }
+        }
         SequentialWordCounter counter = new SequentialWordCounter();
 
         long startTime = System.currentTimeMillis();
 
-        ArrayList<SequentialWordCounter.Entry> count =  counter.countWordsInFile(
-            filename, SequentialWordCounter.SortMethod.COUNT
-        );
+        ArrayList<SequentialWordCounter.Entry> count;
+        if (top > 0) {
+            count = parallel
+                ? counter.topWordsInFileParallel(filename, top)
+                : counter.topWordsInFile(filename, top);
+        } else {
+            count = parallel
+                ? counter.countWordsInFileParallel(filename, SequentialWordCounter.SortMethod.COUNT)
+                : counter.countWordsInFile(filename, SequentialWordCounter.SortMethod.COUNT);
+        }
 
         long endTime = System.currentTimeMillis();
         long totalTime = endTime - startTime;
 
         for (int i = 0; i < count.size(); ++i) {
-            // if (i == 50) { break; }
             SequentialWordCounter.Entry entry = count.get(i);
             System.out.println(entry.key + ": " + entry.value);
         }
@@ -31,4 +56,4 @@ public class App {
         System.err.println("Total execution time: " + totalTime + "ms");
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,314 @@
+package sequential;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table counting words given as UTF-8 bytes.
+ * Keys are copied once into a single byte slab and counts are kept in a `long[]`, so adding a word
+ * that is already in the table allocates nothing, and the whole table is a handful of arrays.
+ *
+ * The slot array is grown incrementally: when it gets half full a table twice as large is created and
+ * every following `add` moves a few slots of the old one, so no single call pays for a full rehash.
+ * Slots only hold entry indexes, so an entry is the same whichever table it is found through.
+ *
+ * The same class is in `slave` and `sequential`, keep both copies identical apart from the package.
+ */
+public class CountTable {
+
+    public interface EntryConsumer {
+        /**
+         * Receives the key in [`offset`, `offset + length`) of `slab` and its count.
+         */
+        public void accept(byte[] slab, int offset, int length, long count) throws IOException;
+    }
+
+    private static final int initialCapacity = 1 << 12;
+
+    // Old slots moved to the new table on each add while resizing
+    private static final int migrationStep = 8;
+
+    // Offset, length and hash of an entry, and its count
+    private static final long bytesPerEntry = 4 + 4 + 4 + 8;
+
+    // Properties
+
+    // Slots hold entry index + 1, 0 marks an empty slot
+    private int[] slots;
+    private int[] oldSlots;
+    private int migrated;
+
+    private byte[] slab;
+    private int slabSize;
+
+    private int[] keyOffsets;
+    private int[] keyLengths;
+    private int[] hashes;
+    private long[] counts;
+    private int size;
+
+    // Constructors
+
+    public CountTable() {
+        clear();
+    }
+
+    // Getters
+
+    public int size() { return size; }
+
+    /**
+     * Number of bytes taken by the arrays of the table as they are allocated, spare capacity included:
+     * the key slab, the entry arrays, and the slots of both tables while resizing.
+     * Growing an array briefly needs its old copy too, and `forEachSorted` 4 more bytes per entry.
+     */
+    public long memoryUsage() {
+        long slotCount = slots.length + (oldSlots == null ? 0 : oldSlots.length);
+        return slab.length + bytesPerEntry * counts.length + 4 * slotCount;
+    }
+
+    // Methods
+
+    /**
+     * Adds `count` to the word made of the bytes in [`start`, `end`) of `buffer`.
+     */
+    public void add(ByteBuffer buffer, int start, int end, long count) {
+        int length = end - start;
+        add(buffer, start, length, hash(buffer, start, length), count);
+    }
+
+    private void add(ByteBuffer buffer, int start, int length, int hash, long count) {
+        if (oldSlots != null) {
+            migrate(migrationStep);
+        }
+
+        int entry = find(slots, buffer, start, length, hash);
+        if (entry < 0 && oldSlots != null) {
+            entry = find(oldSlots, buffer, start, length, hash);
+        }
+        if (entry >= 0) {
+            counts[entry] += count;
+            return;
+        }
+
+        entry = newEntry(buffer, start, length, hash, count);
+        insert(slots, entry);
+
+        if (2 * size > slots.length) {
+            startResize();
+        }
+    }
+
+    /**
+     * Adds the counts of every entry of `other` to this table.
+     */
+    public void addAll(CountTable other) {
+        ByteBuffer keys = ByteBuffer.wrap(other.slab);
+        for (int i = 0; i < other.size; ++i) {
+            // Both tables hash the same way, the hash of `other` is reused
+            add(keys, other.keyOffsets[i], other.keyLengths[i], other.hashes[i], other.counts[i]);
+        }
+    }
+
+    /**
+     * Removes every entry and gives the memory back.
+     */
+    public void clear() {
+        slots = new int[initialCapacity];
+        oldSlots = null;
+        migrated = 0;
+
+        slab = new byte[initialCapacity * 8];
+        slabSize = 0;
+
+        keyOffsets = new int[initialCapacity / 2];
+        keyLengths = new int[initialCapacity / 2];
+        hashes = new int[initialCapacity / 2];
+        counts = new long[initialCapacity / 2];
+        size = 0;
+    }
+
+    public void forEach(EntryConsumer consumer) throws IOException {
+        for (int i = 0; i < size; ++i) {
+            consumer.accept(slab, keyOffsets[i], keyLengths[i], counts[i]);
+        }
+    }
+
+    /**
+     * Visits the entries sorted by key, in the order `String.compareTo` gives for the decoded keys.
+     */
+    public void forEachSorted(EntryConsumer consumer) throws IOException {
+        int[] order = new int[size];
+        for (int i = 0; i < size; ++i) {
+            order[i] = i;
+        }
+        sort(order, 0, size - 1);
+
+        for (int i : order) {
+            consumer.accept(slab, keyOffsets[i], keyLengths[i], counts[i]);
+        }
+    }
+
+    // Lookup
+
+    private static int hash(ByteBuffer buffer, int start, int length) {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < length; ++i) {
+            h = (h ^ buffer.get(start + i)) * 0x01000193;
+        }
+        // Spread the bits so the low ones used by the mask depend on the whole key
+        return h ^ (h >>> 16);
+    }
+
+    private int find(int[] table, ByteBuffer buffer, int start, int length, int hash) {
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (hashes[entry] == hash && keyLengths[entry] == length && keyEquals(entry, buffer, start)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(int entry, ByteBuffer buffer, int start) {
+        int offset = keyOffsets[entry];
+        int length = keyLengths[entry];
+        for (int i = 0; i < length; ++i) {
+            if (slab[offset + i] != buffer.get(start + i)) { return false; }
+        }
+        return true;
+    }
+
+    private void insert(int[] table, int entry) {
+        int mask = table.length - 1;
+        int slot = hashes[entry] & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    // Storage
+
+    private int newEntry(ByteBuffer buffer, int start, int length, int hash, long count) {
+        if (size == counts.length) {
+            int capacity = 2 * counts.length;
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            keyLengths = Arrays.copyOf(keyLengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        if (slabSize + length > slab.length) {
+            slab = Arrays.copyOf(slab, Math.max(2 * slab.length, slabSize + length));
+        }
+
+        for (int i = 0; i < length; ++i) {
+            slab[slabSize + i] = buffer.get(start + i);
+        }
+
+        int entry = size++;
+        keyOffsets[entry] = slabSize;
+        keyLengths[entry] = length;
+        hashes[entry] = hash;
+        counts[entry] = count;
+        slabSize += length;
+        return entry;
+    }
+
+    // Incremental resize
+
+    private void startResize() {
+        if (oldSlots != null) {
+            // The previous resize has to be done before starting another one
+            migrate(oldSlots.length);
+        }
+        oldSlots = slots;
+        slots = new int[2 * oldSlots.length];
+        migrated = 0;
+    }
+
+    private void migrate(int count) {
+        int end = Math.min(oldSlots.length, migrated + count);
+        for (; migrated < end; ++migrated) {
+            int entry = oldSlots[migrated] - 1;
+            // New entries only go to the new table, so each old one is moved exactly once
+            if (entry >= 0) {
+                insert(slots, entry);
+            }
+        }
+        if (migrated == oldSlots.length) {
+            oldSlots = null;
+        }
+    }
+
+    // Sorting
+
+    /**
+     * Rank of a byte in UTF-16 order. Bytes are compared unsigned, except that the lead bytes of
+     * U+E000 to U+FFFF (0xEE, 0xEF) go after the ones of supplementary characters (0xF0 to 0xF4),
+     * which are surrogate pairs and therefore sort lower in a Java String.
+     */
+    private static int rank(byte b) {
+        int value = b & 0xFF;
+        return value == 0xEE || value == 0xEF ? value + 0x10 : value;
+    }
+
+    private int compareKeys(int a, int b) {
+        return compare(slab, keyOffsets[a], keyLengths[a], slab, keyOffsets[b], keyLengths[b]);
+    }
+
+    /**
+     * Compares two UTF-8 words in the order `String.compareTo` gives once they are decoded.
+     * Every sorted run is in this order, whether it comes from a table or from a merge.
+     */
+    static int compare(byte[] a, int offsetA, int lengthA, byte[] b, int offsetB, int lengthB) {
+        int length = Math.min(lengthA, lengthB);
+        for (int i = 0; i < length; ++i) {
+            byte byteA = a[offsetA + i];
+            byte byteB = b[offsetB + i];
+            if (byteA != byteB) {
+                return rank(byteA) - rank(byteB);
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    private void sort(int[] order, int low, int high) {
+        while (high - low > 16) {
+            int pivot = order[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compareKeys(order[i], pivot) < 0) { i++; }
+                while (compareKeys(order[j], pivot) > 0) { j--; }
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse on the smaller side to bound the stack depth
+            if (j - low < high - i) {
+                sort(order, low, j);
+                low = i;
+            } else {
+                sort(order, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; ++i) {
+            int value = order[i];
+            int j = i - 1;
+            while (j >= low && compareKeys(order[j], value) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = value;
+        }
+    }
+
+}
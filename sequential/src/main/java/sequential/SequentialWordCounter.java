@@ -1,13 +1,20 @@
 package sequential;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Scanner;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
  
 public class SequentialWordCounter {
 
@@ -56,29 +63,211 @@ public class SequentialWordCounter {
         } 
     } 
 
+    // Largest part of the file mapped at once
+    private static final long maxWindowSize = Integer.MAX_VALUE;
+
+    // Bytes mapped at a time while looking for the whitespace that ends a range
+    private static final int scanWindow = 64 * 1024;
+
+    private final Tokenizer tokenizer;
+
+    public SequentialWordCounter() {
+        this(new WhitespaceTokenizer());
+    }
+
+    public SequentialWordCounter(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
     public ArrayList<Entry> countWordsInFile(String filename, SortMethod sortMethod) {
-        HashMap<String, Integer> wordCount = new HashMap<String, Integer>();
+        return createEntries(countTable(filename), sortMethod);
+    }
 
-        File file = new File(filename);
-        Scanner input = null;
-        try {
-            input = new Scanner(file);
-        } catch (FileNotFoundException e) {
+    public ArrayList<Entry> countWordsInFileParallel(String filename, SortMethod sortMethod) {
+        return countWordsInFileParallel(filename, sortMethod, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Same result as `countWordsInFile`, using `parallelism` threads. The file is cut in ranges ending
+     * on whitespace, each range is counted in its own table and the tables are merged pairwise as the
+     * tasks complete.
+     */
+    public ArrayList<Entry> countWordsInFileParallel(String filename, SortMethod sortMethod, int parallelism) {
+        return createEntries(countTableParallel(filename, parallelism), sortMethod);
+    }
+
+    /**
+     * The `k` most frequent words in the order of `SortByCount`, without sorting every word.
+     */
+    public ArrayList<Entry> topWordsInFile(String filename, int k) {
+        return createTopEntries(countTable(filename), k);
+    }
+
+    public ArrayList<Entry> topWordsInFileParallel(String filename, int k) {
+        return createTopEntries(countTableParallel(filename, Runtime.getRuntime().availableProcessors()), k);
+    }
+
+    // Counting
+
+    private CountTable countTable(String filename) {
+        CountTable wordCount = new CountTable();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long windowSize = Math.min(maxWindowSize, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                // Only tokenize up to the last whitespace, the rest starts the next window
+                int end = (int) windowSize;
+                if (position + windowSize < size) {
+                    while (end > 0 && window.get(end - 1) != ' ' && window.get(end - 1) != '\n') {
+                        end--;
+                    }
+                    if (end == 0) { end = (int) windowSize; }
+                }
+                window.limit(end);
+
+                tokenizer.tokenize(window, (buffer, start, stop) -> wordCount.add(buffer, start, stop, 1));
+                position += end;
+            }
+        } catch (IOException e) {
             e.printStackTrace();
             System.exit(-1);
-        } 
+        }
 
-        while (input.hasNext()) {
-            String word  = input.next();
-            wordCount.putIfAbsent(word, 0);
-            wordCount.put(word, wordCount.get(word) + 1);
+        return wordCount;
+    }
+
+    private CountTable countTableParallel(String filename, int parallelism) {
+        CountTable wordCount = null;
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            List<long[]> ranges = createRanges(channel, parallelism);
+            wordCount = pool.invoke(new CountTask(channel, ranges, 0, ranges.size()));
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        } finally {
+            pool.shutdown();
         }
 
-        input.close();
+        return wordCount;
+    }
+
+    // Parallel counting
+
+    // Ranges smaller than this are not worth a task
+    private static final long minRangeSize = 1024 * 1024;
+
+    // Ranges per thread, so that threads done early can steal the remaining ones
+    private static final int rangesPerThread = 4;
 
+    private class CountTask extends RecursiveTask<CountTable> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final List<long[]> ranges;
+        private final int from;
+        private final int to;
+
+        CountTask(FileChannel channel, List<long[]> ranges, int from, int to) {
+            this.channel = channel;
+            this.ranges = ranges;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected CountTable compute() {
+            if (to - from == 1) {
+                return countRange(channel, ranges.get(from));
+            }
+
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(channel, ranges, from, middle);
+            left.fork();
+            CountTable right = new CountTask(channel, ranges, middle, to).compute();
+            CountTable counts = left.join();
+
+            // The larger table absorbs the smaller one
+            if (counts.size() < right.size()) {
+                right.addAll(counts);
+                return right;
+            }
+            counts.addAll(right);
+            return counts;
+        }
+    }
+
+    private CountTable countRange(FileChannel channel, long[] range) {
+        CountTable counts = new CountTable();
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, range[0], range[1]);
+            tokenizer.tokenize(buffer, (bytes, start, stop) -> counts.add(bytes, start, stop, 1));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return counts;
+    }
+
+    /**
+     * Cuts the file in (offset, length) ranges ending on whitespace, each of them small enough to be mapped.
+     */
+    private static List<long[]> createRanges(FileChannel channel, int parallelism) throws IOException {
+        long size = channel.size();
+        long count = Math.max(1, Math.min((long) parallelism * rangesPerThread, size / minRangeSize));
+        count = Math.max(count, (size + maxWindowSize - 1) / maxWindowSize);
+        long approxSize = size / count;
+
+        List<long[]> ranges = new ArrayList<>();
+        long start = 0;
+        for (int i = 0; i < count; ++i) {
+            long end = i == count - 1
+                ? size
+                : alignToWhitespace(channel, Math.max(start, (i + 1) * approxSize), size);
+            ranges.add(new long[] { start, end - start });
+            start = end;
+        }
+        return ranges;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * Returns the first position at or after `position` that follows a whitespace byte, or `size`.
+     */
+    private static long alignToWhitespace(FileChannel channel, long position, long size) throws IOException {
+        if (position <= 0) { return 0; }
+
+        long start = position - 1;
+        while (start < size) {
+            long windowSize = Math.min(scanWindow, size - start);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, windowSize);
+            for (int i = 0; i < windowSize; ++i) {
+                if (isWhitespace(window.get(i))) {
+                    return start + i + 1;
+                }
+            }
+            start += windowSize;
+        }
+        return size;
+    }
+
+    // Results
+
+    private static ArrayList<Entry> createEntries(CountTable wordCount, SortMethod sortMethod) {
         ArrayList<Entry> elements = new ArrayList<Entry>(wordCount.size());
-        for (String key : wordCount.keySet()) {
-            elements.add(new Entry(key, wordCount.get(key)));
+        try {
+            wordCount.forEach((slab, offset, length, count) ->
+                elements.add(new Entry(new String(slab, offset, length, StandardCharsets.UTF_8), (int) count)));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
         }
 
         switch (sortMethod) {
@@ -91,6 +280,37 @@ public class SequentialWordCounter {
         }
 
         return elements;
-  }
+    }
+
+    /**
+     * Keeps the `k` best entries in a min-heap whose head is the worst of them, so each word costs
+     * at most a `log k` update. Words are only decoded when their count can get them in the heap.
+     */
+    private static ArrayList<Entry> createTopEntries(CountTable wordCount, int k) {
+        Comparator<Entry> order = new SortByCount();
+        PriorityQueue<Entry> heap = new PriorityQueue<Entry>(Math.max(1, k), order.reversed());
+        if (k > 0) {
+            try {
+                wordCount.forEach((slab, offset, length, count) -> {
+                    if (heap.size() == k && count < heap.peek().value) { return; }
+
+                    Entry entry = new Entry(new String(slab, offset, length, StandardCharsets.UTF_8), (int) count);
+                    if (heap.size() < k) {
+                        heap.add(entry);
+                    } else if (order.compare(entry, heap.peek()) < 0) {
+                        heap.poll();
+                        heap.add(entry);
+                    }
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+
+        ArrayList<Entry> elements = new ArrayList<Entry>(heap);
+        elements.sort(order);
+        return elements;
+    }
 
 }
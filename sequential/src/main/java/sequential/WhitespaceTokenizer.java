@@ -0,0 +1,75 @@
+package sequential;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Tokenizer with the same word boundaries as `java.util.Scanner`'s default delimiter (`\p{javaWhitespace}+`),
+ * working on the raw UTF-8 bytes instead of a regex over decoded characters.
+ * ASCII bytes never appear inside a multi-byte UTF-8 sequence, so most bytes are classified on their own.
+ * The only multi-byte whitespace characters are 3 bytes long and start with 0xE1, 0xE2 or 0xE3.
+ *
+ * The same class is in `slave` and `sequential`, keep both copies identical apart from the package.
+ */
+public class WhitespaceTokenizer implements Tokenizer {
+
+    @Override
+    public void tokenize(ByteBuffer buffer, TokenConsumer consumer) throws IOException {
+        int limit = buffer.limit();
+        int tokenStart = -1;
+        int i = buffer.position();
+
+        while (i < limit) {
+            byte b = buffer.get(i);
+            int whitespaceLength = 0;
+            if (b >= 0) {
+                whitespaceLength = isAsciiWhitespace(b) ? 1 : 0;
+            } else if ((b == (byte) 0xE1 || b == (byte) 0xE2 || b == (byte) 0xE3) && i + 2 < limit) {
+                whitespaceLength = isWhitespace(b, buffer.get(i + 1), buffer.get(i + 2)) ? 3 : 0;
+            }
+
+            if (whitespaceLength == 0) {
+                if (tokenStart < 0) { tokenStart = i; }
+                i += 1;
+                continue;
+            }
+
+            if (tokenStart >= 0) {
+                consumer.accept(buffer, tokenStart, i);
+                tokenStart = -1;
+            }
+            i += whitespaceLength;
+        }
+
+        if (tokenStart >= 0) {
+            consumer.accept(buffer, tokenStart, limit);
+        }
+    }
+
+    private static boolean isAsciiWhitespace(byte b) {
+        // \t \n \u000B \f \r, the file/group/record/unit separators and ' '
+        return (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x20);
+    }
+
+    /**
+     * True for the UTF-8 encodings of the non-ASCII characters `Character.isWhitespace` accepts:
+     * U+1680, U+2000 to U+2006, U+2008 to U+200A, U+2028, U+2029, U+205F and U+3000.
+     */
+    private static boolean isWhitespace(byte b0, byte b1, byte b2) {
+        switch (b0) {
+            case (byte) 0xE1:
+                return b1 == (byte) 0x9A && b2 == (byte) 0x80;
+            case (byte) 0xE2:
+                if (b1 == (byte) 0x80) {
+                    return (b2 >= (byte) 0x80 && b2 <= (byte) 0x8A && b2 != (byte) 0x87)
+                        || b2 == (byte) 0xA8 || b2 == (byte) 0xA9;
+                }
+                return b1 == (byte) 0x81 && b2 == (byte) 0x9F;
+            case (byte) 0xE3:
+                return b1 == (byte) 0x80 && b2 == (byte) 0x80;
+            default:
+                return false;
+        }
+    }
+
+}
@@ -1,24 +1,26 @@
 package slave;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.AbstractMap.SimpleEntry;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import slave.ProcessRunner.AlreadyRunningException;
-
 public class App {
 
     //
@@ -27,73 +29,233 @@ public class App {
 
     public static void main(String[] args) {
 
-        if (args.length != 1 && args.length != 2) {
-            System.err.println("Usage: \n\tjava App <mode>\n\tjava App <mode> <file-name>");
+        if (args.length < 1 || args.length > 5) {
+            System.err.println(
+                "Usage: \n\tjava App <mode>\n\tjava App <mode> <file-name>"
+                + "\n\tjava App 1 <file-name> [none|deflate|lz4] [reducer,... [partition]]"
+                + "\n\tjava App 2 <partition> <expected-runs> [top-k [word|count]]"
+                + "\n\tjava App 3 <file-name> [memory-budget-bytes]"
+                + "\n\tjava App 4 [port [address]]"
+                + "\n\tjava App 5 <file-name> <split-number> <offset> <length>"
+            );
+            System.exit(1);
+        }
+
+        try {
+            App.run(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (Exception e) {
+            e.printStackTrace();
             System.exit(1);
         }
+    }
 
+    /**
+     * Runs the phase described by `args` in this JVM and returns what it read and wrote.
+     * Used by `main` for one-shot runs and by `WorkerDaemon` for every command it receives, so a phase
+     * that fails throws instead of exiting: the daemon answers with the error and keeps running.
+     */
+    static TaskCounters run(String[] args) throws IOException {
         String modeStr = args[0];
 
+        if (Constants.mapThreads <= 0) {
+            throw new IllegalArgumentException(
+                "Illegal value " + Constants.mapThreads + " for " + Constants.mapThreadsProperty + "."
+            );
+        }
+
         int mode = 0;
         try {
             mode = Integer.parseInt(modeStr);
         } catch (NumberFormatException e) {
-            System.err.println("Illegal argument \"" + modeStr + "\" for mode.");
-            System.exit(1);
+            throw new IllegalArgumentException("Illegal argument \"" + modeStr + "\" for mode.");
         }
 
+        boolean needsFile = mode == 0 || mode == 1 || mode == 3;
+        if (needsFile && args.length < 2) {
+            throw new IllegalArgumentException("Mode " + mode + " expects a file name");
+        }
+        if (mode == 5 && args.length != 5) {
+            throw new IllegalArgumentException("Mode 5 expects a file name, a split number, an offset and a length");
+        }
+
+        App app = null;
         switch (mode) {
             case 0: {
                 String fileName = args[1];
-                App app = new App(fileName);
+                app = new App(fileName);
                 app.createMapFromSplit();
                 break;
             }
             case 1: {
                 String fileName = args[1];
-                App app = new App(fileName);
-                app.createShuffleFromMap();
+                // Codec compressing the partition files sent to the reducers
+                String codec = args.length >= 3 ? args[2] : "none";
+                BlockCodec.create(codec);
+                app = new App(fileName);
+                // The master names the reducer of each partition when one of them moved after a failure,
+                // and asks for a single partition when only that one has to be sent again
+                List<String> reducers = args.length >= 4 ? List.of(args[3].split(",")) : null;
+                int partition = -1;
+                if (args.length >= 5) {
+                    try {
+                        partition = Integer.parseInt(args[4]);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Illegal argument \"" + args[4] + "\" for partition.");
+                    }
+                    if (partition < 0 || partition >= reducers.size()) {
+                        throw new IllegalArgumentException("Partition " + partition + " has no reducer");
+                    }
+                }
+                app.createShuffleFromMap(codec, reducers, partition);
                 break;
             }
             case 2: {
-                App app = new App();
-                app.createReduceFromShuffle();
+                app = new App();
+                if (args.length >= 3) {
+                    // Reduce one partition once all of its runs arrived
+                    int expectedRuns = 0;
+                    try {
+                        expectedRuns = Integer.parseInt(args[2]);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException(
+                            "Illegal argument \"" + args[2] + "\" for expected runs."
+                        );
+                    }
+                    // Also keep the most frequent words of the partition for the master
+                    int topK = 0;
+                    if (args.length >= 4) {
+                        try {
+                            topK = Integer.parseInt(args[3]);
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Illegal argument \"" + args[3] + "\" for top k.");
+                        }
+                    }
+                    // Order of the reduce file, by word unless the master merges the results by count
+                    boolean byCount = false;
+                    if (args.length == 5) {
+                        if (!args[4].equals("word") && !args[4].equals("count")) {
+                            throw new IllegalArgumentException("Illegal argument \"" + args[4] + "\" for order.");
+                        }
+                        byCount = args[4].equals("count");
+                    }
+                    app.createReduceForPartition(args[1], expectedRuns, topK, byCount);
+                } else {
+                    app.createReduceFromShuffle();
+                }
+                break;
+            }
+            case 3: {
+                String fileName = args[1];
+                long memoryBudget = Constants.combinerMemoryBudget;
+                if (args.length == 3) {
+                    try {
+                        memoryBudget = Long.parseLong(args[2]);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException(
+                            "Illegal argument \"" + args[2] + "\" for memory budget."
+                        );
+                    }
+                }
+                app = new App(fileName);
+                app.createCombinedMapFromSplit(memoryBudget);
+                break;
+            }
+            case 4: {
+                int port = Constants.daemonPort;
+                if (args.length >= 2) {
+                    try {
+                        port = Integer.parseInt(args[1]);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Illegal argument \"" + args[1] + "\" for port.");
+                    }
+                }
+                // Name or address of this machine on the network of the cluster, the only one listened on
+                String address = args.length >= 3 ? args[2] : null;
+                WorkerDaemon daemon = new WorkerDaemon(port, address);
+                daemon.serve();
+                break;
+            }
+            case 5: {
+                // Map a range of a file every machine can read, without a split file
+                String fileName = args[1];
+                int splitNumber = 0;
+                long offset = 0;
+                long length = 0;
+                try {
+                    splitNumber = Integer.parseInt(args[2]);
+                    offset = Long.parseLong(args[3]);
+                    length = Long.parseLong(args[4]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Illegal range \"" + args[2] + " " + args[3] + " " + args[4] + "\"");
+                }
+                app = new App(fileName);
+                app.createCombinedMapFromRange(splitNumber, offset, length);
                 break;
             }
             default:
-                System.err.println("Unexpected mode " + mode);
-                System.exit(1);
+                throw new IllegalArgumentException("Unexpected mode " + mode);
         }
+        return app != null ? app.counters : new TaskCounters();
     }
 
     //
     // Static Methods
     //
 
-    private static String getOutputMapName(String filePath) {
+    private static int getNumberFromFileName(String filePath) {
         String[] components = filePath.split("/");
         String name = components[components.length - 1].split("\\.")[0];
         Scanner in = new Scanner(name);
         in.useDelimiter("[^0-9]+");
         int number = in.nextInt();
         in.close();
-        return Constants.mapsDir + "UM" + number + ".txt";
+        return number;
     }
 
-    private static String getOutputShuffleName(String key) {
-        String machineName = null;
-        try {
-            machineName = java.net.InetAddress.getLocalHost().getHostName();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
+    private static String getOutputMapName(String filePath) {
+        return Constants.mapsDir + "UM" + App.getNumberFromFileName(filePath) + ".bin";
+    }
+
+    private static String getOutputShuffleName(int partition, int mapNumber) throws IOException {
+        String machineName = java.net.InetAddress.getLocalHost().getHostName();
+        return Constants.shufflesDir + partition + "-" + machineName + "-" + mapNumber + ".bin";
+    }
+
+    private static String getPartitionFromShuffleName(String fileName) {
+        // fileName: <partition>-<machine_name>-<map_number>.bin
+        return fileName.substring(0, fileName.indexOf('-'));
+    }
+
+    private static int getMapNumberFromShuffleName(String filePath) {
+        // Machine names may contain '-' and '.', the map number is between the last ones
+        String name = filePath.substring(filePath.lastIndexOf('/') + 1);
+        return Integer.parseInt(name.substring(name.lastIndexOf('-') + 1, name.lastIndexOf('.')));
+    }
+
+    /**
+     * Hash of the UTF-8 bytes of a word. Every mapper partitions with it, so a word always
+     * ends up on the same reducer.
+     */
+    private static int hash(byte[] key, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            h = 31 * h + key[i];
         }
-        int hash = key.hashCode();
-        return Constants.shufflesDir + Integer.toUnsignedString(hash) + "-" + machineName + ".txt";
+        return h;
     }
 
-    private static String getFileForHash(String hash) {
-        return Constants.reducesDir + hash + ".txt";
+    private static String getFileForPartition(String partition) {
+        return Constants.reducesDir + partition + ".bin";
+    }
+
+    /**
+     * Total size of `files`, skipping the null ones.
+     */
+    private static long sizeOf(List<String> files) {
+        return files.stream().filter(file -> file != null).mapToLong(file -> new File(file).length()).sum();
     }
 
     //
@@ -104,6 +266,8 @@ public class App {
 
     List<String> machines = new ArrayList<>();
 
+    private final TaskCounters counters = new TaskCounters();
+
     //
     // Constructor
     //
@@ -120,232 +284,162 @@ public class App {
     // MAP
     //
 
-    private void createMapDirectory() {
-        ProcessBuilder pb = new ProcessBuilder("mkdir", "-p", Constants.mapsDir);
-        try {
-            Process p = pb.start();
-            p.waitFor();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
+    private void createMapDirectory() throws IOException {
+        Files.createDirectories(Paths.get(Constants.mapsDir));
     }
 
-    private void createMapFromSplit() {
+    private void createMapFromSplit() throws IOException {
         createMapDirectory();
-        File splitFile = new File(fileName);
-        File outFile = new File(App.getOutputMapName(fileName));
-        try {
-            outFile.createNewFile();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-        FileWriter fw = null;
-        BufferedWriter bw = null;
-
-        try {
-            fw = new FileWriter(outFile);
-            bw = new BufferedWriter(fw);
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-
-        Scanner input = null;
-        try {
-            input = new Scanner(new BufferedReader(new FileReader(splitFile)));
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(-1);
-        } 
 
-        while (input.hasNext()) {
-            String word  = input.next();
+        String outputFile = App.getOutputMapName(fileName);
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            RecordWriter writer = new RecordWriter(outputFile);
             try {
-                bw.write(word + " 1\n");
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(1);
+                // Tokens are copied straight from the mapped split to the output, without decoding them
+                MappedByteBuffer split = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                Tokenizer tokenizer = new WhitespaceTokenizer();
+                tokenizer.tokenize(split, (buffer, start, end) -> writer.write(buffer, start, end, 1));
+            } finally {
+                writer.close();
             }
+            // Every token is a record of its own
+            counters.addRead(channel.size(), writer.getRecords());
+            counters.addWritten(new File(outputFile).length(), writer.getRecords());
         }
+    }
+
+    /**
+     * Same as `createMapFromSplit` but adds up the counts of each word before writing,
+     * so the map file has one record per distinct word.
+     */
+    private void createCombinedMapFromSplit(long memoryBudget) throws IOException {
+        createMapDirectory();
+        File splitFile = new File(fileName);
 
-        try { input.close(); } catch (Exception e) { }
-        try { bw.close(); } catch (Exception e) { }
-        try { fw.close(); } catch (Exception e) { }
+        ParallelMapper.map(fileName, 0, splitFile.length(), App.getOutputMapName(fileName), memoryBudget, counters);
+    }
+
+    /**
+     * Same as `createCombinedMapFromSplit` for the `length` bytes of `fileName` starting at `offset`.
+     * The range is memory-mapped, so nothing outside of it is read.
+     */
+    private void createCombinedMapFromRange(int splitNumber, long offset, long length) throws IOException {
+        createMapDirectory();
+        String outputFile = Constants.mapsDir + "UM" + splitNumber + ".bin";
+
+        ParallelMapper.map(fileName, offset, length, outputFile, Constants.combinerMemoryBudget, counters);
     }
 
     //
     // SHUFFLE
     //
 
-    private void createShuffleFromMap() {
-        this.machines = this.readReceivedMachinesFile();
-        Set<String> shuffleFiles = this.prepareShuffleFiles();
+    /**
+     * Partitions the map file and sends partition i to `reducers[i]`, or to the machine on line i of
+     * the machines file if `reducers` is null. Only `partition` is sent if it isn't -1, and
+     * partitions whose reducer is `Constants.skippedReducer` aren't sent.
+     */
+    private void createShuffleFromMap(String codec, List<String> reducers, int partition) throws IOException {
+        this.machines = reducers != null ? reducers : this.readReceivedMachinesFile();
+        List<String> shuffleFiles = this.prepareShuffleFiles(codec, partition);
         this.sendShuffleFiles(shuffleFiles);
     }
 
-    private List<String> readReceivedMachinesFile() {
-        FileReader fr = null;
-        BufferedReader br = null;
+    private List<String> readReceivedMachinesFile() throws IOException {
         List<String> machines = new ArrayList<>();
 
-        try {
-            fr = new FileReader(Constants.machinesFile);
-            br = new BufferedReader(fr);
-
-            String machine = null;
-            try {
-                machine = br.readLine();
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(1);
-            }
-            while (machine != null) {
+        try (BufferedReader br = new BufferedReader(new FileReader(Constants.machinesFile))) {
+            for (String machine = br.readLine(); machine != null; machine = br.readLine()) {
                 machines.add(machine);
-
-                try {
-                    machine = br.readLine();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    System.exit(1);
-                }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        } finally {
-            try { br.close(); } catch (Exception e) { }
-            try { fr.close(); } catch (Exception e) { }
         }
 
         return machines;
     }
 
-    private void createShufflesDirectory() {
-        ProcessBuilder pb = new ProcessBuilder("mkdir", "-p", Constants.shufflesDir);
-        try {
-            Process p = pb.start();
-            p.waitFor();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
+    private void createShufflesDirectory() throws IOException {
+        Files.createDirectories(Paths.get(Constants.shufflesDir));
     }
 
-    private Set<String> prepareShuffleFiles() {
-        Set<String> shuffleFiles = new HashSet<>();
+    /**
+     * Splits the map file into one partition file per reducer. The word goes to
+     * partition `hash mod machines.size()`, reduced by the machine at that index, which may
+     * reduce other partitions too.
+     * Each partition file is a run sorted by word, so the reducer only has to merge them.
+     * If `onlyPartition` isn't -1, the other partitions are skipped and their files are null,
+     * as are partitions whose machine is `skippedReducer`.
+     */
+    private List<String> prepareShuffleFiles(String codec, int onlyPartition) throws IOException {
         createShufflesDirectory();
-        FileReader fr = null;
-        BufferedReader br = null;
-
-        try {
-            fr = new FileReader(fileName);
-            br = new BufferedReader(fr);
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-
-        String line = null;
-        try {
-            line = br.readLine();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-        while (line != null) {
-            String word  = line.split(" ")[0];
-
-            String shuffleName = App.getOutputShuffleName(word);
-            shuffleFiles.add(shuffleName);
-
-            FileWriter fw = null;
-            BufferedWriter bw = null;
-            try {
-                fw = new FileWriter(shuffleName, true);
-                bw = new BufferedWriter(fw);
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(1);
+        int partitionsCount = machines.size();
+        long memoryBudget = Constants.combinerMemoryBudget / partitionsCount;
+        List<String> shuffleFiles = new ArrayList<>(partitionsCount);
+        List<Combiner> partitions = new ArrayList<>(partitionsCount);
+        int mapNumber = App.getNumberFromFileName(fileName);
+
+        for (int i = 0; i < partitionsCount; ++i) {
+            if ((onlyPartition != -1 && i != onlyPartition) || machines.get(i).equals(Constants.skippedReducer)) {
+                shuffleFiles.add(null);
+                partitions.add(null);
+                continue;
             }
+            String shuffleName = App.getOutputShuffleName(i, mapNumber);
+            shuffleFiles.add(shuffleName);
+            partitions.add(new Combiner(shuffleName, memoryBudget, codec));
+        }
 
-            try {
-                bw.write(line + "\n");
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(1);
+        long recordsIn = 0;
+        try (RecordReader reader = new RecordReader(fileName)) {
+            while (reader.next()) {
+                recordsIn++;
+                byte[] key = reader.getKeyBytes();
+                int offset = reader.getKeyOffset();
+                int length = reader.getKeyLength();
+                Combiner partition = partitions.get(Math.floorMod(App.hash(key, offset, length), partitionsCount));
+                if (partition == null) { continue; }
+
+                partition.add(reader.getKeyBuffer(), offset, offset + length, reader.getCount());
             }
 
-            try { bw.close(); } catch (Exception e) { }
-            try { fw.close(); } catch (Exception e) { }
-
-            try {
-                line = br.readLine();
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(1);
+            CodecStats stats = new CodecStats();
+            long recordsOut = 0;
+            for (Combiner partition : partitions) {
+                if (partition == null) { continue; }
+                partition.finish();
+                stats.add(partition.getStats());
+                recordsOut += partition.getRecords();
             }
+            counters.addRead(new File(fileName).length(), recordsIn);
+            counters.addWritten(App.sizeOf(shuffleFiles), recordsOut);
+            System.err.println("[Shuffle] " + fileName + " " + codec + ": " + stats);
         }
 
-        try { br.close(); } catch (Exception e) { }
-        try { fr.close(); } catch (Exception e) { }
-
         return shuffleFiles;
     }
 
-    private Thread sendShuffleFilesToMachine(Set<String> files, String machine) {
-        String login = Constants.username + "@" + machine;
-        String mkdirCmd = Constants.mkdir + " " + Constants.receivedShufflesDir;
-        ProcessBuilder mkdirBuilder = new ProcessBuilder(Constants.ssh, login, mkdirCmd);
-        
-        ProcessBuilder scpBuilder = null;
-        if (files.size() != 0) {
-            List<String> commands = new ArrayList<>(files.size() + 2);
-            String dest = login + ":" + Constants.receivedShufflesDir;
-            commands.add(Constants.scp);
-            commands.addAll(files);
-            commands.add(dest);
-            scpBuilder = new ProcessBuilder(commands);
-        }
-
-        ProcessRunner runner = new ProcessRunner();
-        try {
-            runner.addProcess(mkdirBuilder, 4000);
-            if (files.size() != 0) {
-                runner.addProcess(scpBuilder, 4000);
+    private Thread sendShuffleFileToMachine(String file, String machine, List<Exception> errors) {
+        Thread thread = new Thread(() -> {
+            try {
+                ShuffleClient.forMachine(machine).send(file);
+            } catch (Exception e) {
+                synchronized (errors) {
+                    errors.add(e);
+                }
             }
-        } catch (AlreadyRunningException e) {
-            System.err.println("This should never happen");
-            System.exit(1);
-        }
-        Thread thread = new Thread(runner);
+        });
         thread.start();
         return thread;
     }
 
-    private void sendShuffleFiles(Set<String> files) {
+    private void sendShuffleFiles(List<String> files) {
         List<Thread> threads = new ArrayList<>();
+        List<Exception> errors = new ArrayList<>();
 
+        // Partition i is reduced by machine i of the list, files to the same machine share its connection
         for (int i = 0; i < machines.size(); ++i) {
-            final int index = i;
+            if (files.get(i) == null) { continue; }
             String machine = machines.get(i);
-            Set<String> filteredFiles = files.stream()
-                .filter(filePath -> {
-                    // fileName: <dir_path>/<hash>-<machine_name>.txt
-                    // escape / because of regex
-                    String[] components = filePath.split("\\/");
-                    String fileName = components[components.length - 1];
-                    try {
-                        int hash = Integer.parseInt(fileName.split("-")[0]);
-                        return hash % machines.size() == index;
-                    } catch (Exception e) {
-                        return false;
-                    }
-                })
-                .collect(Collectors.toSet());
-            
-            Thread t = sendShuffleFilesToMachine(filteredFiles, machine);
+            Thread t = sendShuffleFileToMachine(files.get(i), machine, errors);
             threads.add(t);
         }
 
@@ -356,117 +450,185 @@ public class App {
                 e.printStackTrace();
             }
         });
+
+        if (!errors.isEmpty()) {
+            errors.forEach(Exception::printStackTrace);
+            throw new IllegalStateException("Failed to send " + errors.size() + " shuffle files");
+        }
+        counters.addShuffle(App.sizeOf(files));
     }
 
     //
     // REDUCE
     //
 
-    private void createReduceFromShuffle() {
+    private void createReduceFromShuffle() throws IOException {
         createReducesDirectory();
         createReduces();
     }
 
-    private void createReducesDirectory() {
-        ProcessBuilder pb = new ProcessBuilder("mkdir", "-p", Constants.reducesDir);
-        try {
-            Process p = pb.start();
-            p.waitFor();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
+    /**
+     * Reduces a single partition while its runs are still arriving. Every `mergeFactor` completed runs
+     * are merged into an intermediate run, and the last merge happens once `expectedRuns` runs were
+     * received, so most of the merging overlaps with the shuffle of slower mappers.
+     * If `topK` is positive, the `topK` most frequent words of the partition are also written to
+     * `topsDir` during the last merge, so the master only has to fetch those.
+     * With `byCount`, the reduce file is sorted by count instead of by word.
+     * A split whose run arrives twice, e.g. from a machine that mapped it again after a failure,
+     * is only counted once.
+     */
+    private void createReduceForPartition(String partition, int expectedRuns, int topK, boolean byCount)
+            throws IOException {
+        createReducesDirectory();
+        Files.createDirectories(Paths.get(Constants.mergesDir));
+        if (topK > 0) {
+            Files.createDirectories(Paths.get(Constants.topsDir));
         }
-    }
 
-    private SimpleEntry<String, Integer> reduceFile(String fileName) {
-        int count = 0;
-        String word = null;
+        Set<String> consumedRuns = new HashSet<>();
+        Set<Integer> consumedSplits = new HashSet<>();
+        List<String> pendingRuns = new ArrayList<>();
+        List<String> intermediateRuns = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + Constants.reduceWaitTimeout;
+
+        while (consumedSplits.size() < expectedRuns) {
+            for (String run : listReceivedRuns(partition)) {
+                if (consumedRuns.add(run) && consumedSplits.add(App.getMapNumberFromShuffleName(run))) {
+                    pendingRuns.add(run);
+                    counters.addShuffle(new File(run).length());
+                }
+            }
 
-        FileReader fr = null;
-        BufferedReader br = null;
+            boolean complete = consumedSplits.size() >= expectedRuns;
+            if (!complete && pendingRuns.size() >= Constants.mergeFactor) {
+                String intermediate = Constants.mergesDir + partition + "-" + intermediateRuns.size() + ".bin";
+                mergeRuns(pendingRuns, intermediate);
+                intermediateRuns.add(intermediate);
+                pendingRuns.clear();
+            }
+            if (complete) { break; }
 
-        try {
-            fr = new FileReader(fileName);
-            br = new BufferedReader(fr);
-
-            for (String line = br.readLine(); line != null; line = br.readLine()) {
-                String[] comps = line.split(" ");
-                if (comps.length != 2) { continue; }
-                if (word == null) {
-                    word = comps[0];
-                }
-                count += 1;
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(
+                    "Partition " + partition + " received " + consumedSplits.size() + " of " + expectedRuns + " runs"
+                );
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        } finally {
-            try { br.close(); } catch (Exception e) {}
-            try { fr.close(); } catch (Exception e) {}
+            long waitStart = System.nanoTime();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for partition " + partition);
+            }
+            counters.addWait(System.nanoTime() - waitStart);
+        }
+
+        List<String> runs = new ArrayList<>(intermediateRuns);
+        runs.addAll(pendingRuns);
+        TopWords top = topK > 0 ? new TopWords(topK) : null;
+        if (byCount) {
+            mergeRunsByCount(runs, App.getFileForPartition(partition), top);
+        } else {
+            mergeRuns(runs, App.getFileForPartition(partition), top);
+        }
+
+        if (top != null) {
+            top.write(Constants.topsDir + partition + ".txt");
         }
 
-        return new SimpleEntry<String, Integer>(word, count);
+        intermediateRuns.forEach(run -> new File(run).delete());
     }
 
-    private void createHashFile(String hash, String word, int count) {
-        FileWriter fw = null;
-        BufferedWriter bw = null;
-        String hashFile = App.getFileForHash(hash);
+    private List<String> listReceivedRuns(String partition) throws IOException {
+        try (Stream<Path> paths = Files.list(Paths.get(Constants.receivedShufflesDir))) {
+            return paths
+                .map(path -> path.getFileName().toString())
+                .filter(name -> !name.endsWith(ShuffleServer.partialSuffix))
+                .filter(name -> App.getPartitionFromShuffleName(name).equals(partition))
+                .map(name -> Constants.receivedShufflesDir + name)
+                .collect(Collectors.toList());
+        } catch (NoSuchFileException e) {
+            // Nothing received yet
+            return new ArrayList<>();
+        }
+    }
+
+    private void createReducesDirectory() throws IOException {
+        Files.createDirectories(Paths.get(Constants.reducesDir));
+    }
+
+    /**
+     * Merges the sorted runs received for `partition` into a single file sorted by word.
+     * Only one line per run is kept in memory.
+     */
+    private void reducePartition(String partition, List<String> runs) throws IOException {
+        mergeRuns(runs, App.getFileForPartition(partition));
+    }
 
+    private void mergeRuns(List<String> runs, String outputFile) throws IOException {
+        mergeRuns(runs, outputFile, null);
+    }
+
+    /**
+     * Merges `runs` into `outputFile`, also adding every merged count to `top` if it is not null.
+     */
+    private void mergeRunsByCount(List<String> runs, String outputFile, TopWords top) throws IOException {
+        CountSorter sorter = new CountSorter();
+        RecordWriter writer = new RecordWriter(outputFile);
         try {
-            fw = new FileWriter(hashFile, true);
-            bw = new BufferedWriter(fw);
+            long records = RunMerger.merge(runs, (key, offset, length, count) -> {
+                sorter.accept(key, offset, length, count);
+                if (top != null && top.accepts(count)) {
+                    top.add(new String(key, offset, length, StandardCharsets.UTF_8), count);
+                }
+            });
+            sorter.write(writer);
+            counters.addRead(App.sizeOf(runs), records);
+        } finally {
+            writer.close();
+        }
+        counters.addWritten(new File(outputFile).length(), writer.getRecords());
+    }
 
-            String line = word + " " + count + "\n";
-            bw.write(line);
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
+    private void mergeRuns(List<String> runs, String outputFile, TopWords top) throws IOException {
+        RecordWriter writer = new RecordWriter(outputFile);
+        try {
+            long records = RunMerger.merge(runs, (key, offset, length, count) -> {
+                writer.write(key, offset, length, count);
+                // Only the words that make it to the top are decoded
+                if (top != null && top.accepts(count)) {
+                    top.add(new String(key, offset, length, StandardCharsets.UTF_8), count);
+                }
+            });
+            counters.addRead(App.sizeOf(runs), records);
         } finally {
-            try { bw.close(); } catch (Exception e) { }
-            try { fw.close(); } catch (Exception e) { }
+            writer.close();
         }
+        // Intermediate merges count too, their runs are written and read again
+        counters.addWritten(new File(outputFile).length(), writer.getRecords());
     }
 
-    private void createReduces() {
+    private void createReduces() throws IOException {
 
         // Get list of shuffles received
         List<Path> receivedShuffles = null;
         try (Stream<Path> paths = Files.walk(Paths.get(Constants.receivedShufflesDir))) {
             receivedShuffles = paths
                 .filter(Files::isRegularFile)
+                // Skip files that are still being received
+                .filter(path -> !path.toString().endsWith(ShuffleServer.partialSuffix))
                 .collect(Collectors.toUnmodifiableList());
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
         }
 
-        // Create list of hashes
-        List<String> hashes = receivedShuffles.stream()
-            .map(path -> path.getFileName().toString())
-            .map(name -> name.split("-")[0])
-            .distinct()
-            .collect(Collectors.toUnmodifiableList());
-        
-        for (String hash : hashes) {
-            List<String> files = receivedShuffles.stream()
-                .filter(path -> path.getFileName().toString().startsWith(hash))
-                .map(path -> path.toString())
-                .collect(Collectors.toUnmodifiableList());
-            SimpleEntry<String, Integer> pair = files.stream()
-                .map(this::reduceFile)
-                .reduce((result, value) -> {
-                    if (result == null) {
-                        return value;
-                    } else {
-                        return new SimpleEntry<String,Integer>(
-                            value.getKey(), result.getValue() + value.getValue()
-                            );
-                    }
-                }).get();
-                
-            // Write to file
-            createHashFile(hash, pair.getKey(), pair.getValue());
+        // Group the received runs by partition
+        Map<String, List<String>> partitions = receivedShuffles.stream()
+            .collect(Collectors.groupingBy(
+                path -> App.getPartitionFromShuffleName(path.getFileName().toString()),
+                Collectors.mapping(Path::toString, Collectors.toList())
+            ));
+
+        for (Map.Entry<String, List<String>> partition : partitions.entrySet()) {
+            reducePartition(partition.getKey(), partition.getValue());
         }
 
     }
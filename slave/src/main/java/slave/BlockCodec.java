@@ -0,0 +1,64 @@
+package slave;
+
+import java.io.IOException;
+
+/**
+ * Compression applied to each block of a record file. The codec of a block is stored in its header,
+ * so a reader decodes any file whatever codec the writer was given.
+ * Instances keep buffers between calls and must not be shared by threads.
+ */
+public interface BlockCodec {
+
+    // Id stored in the blocks written without compression
+    static final byte noneId = 0;
+
+    public byte getId();
+
+    public String getName();
+
+    /**
+     * Upper bound of the compressed size of `length` bytes.
+     */
+    public int maxCompressedLength(int length);
+
+    /**
+     * Compresses the first `length` bytes of `src` into `dst`, which holds at least
+     * `maxCompressedLength(length)` bytes. Returns the compressed size.
+     */
+    public int compress(byte[] src, int length, byte[] dst);
+
+    /**
+     * Decompresses the first `length` bytes of `src` into the first `rawLength` bytes of `dst`.
+     */
+    public void decompress(byte[] src, int length, byte[] dst, int rawLength) throws IOException;
+
+    public default void close() { }
+
+    /**
+     * New codec called `name`, or null for "none".
+     */
+    public static BlockCodec create(String name) {
+        switch (name) {
+            case "none":
+                return null;
+            case DeflateCodec.name:
+                return new DeflateCodec();
+            case Lz4Codec.name:
+                return new Lz4Codec();
+            default:
+                throw new IllegalArgumentException("Unknown codec \"" + name + "\"");
+        }
+    }
+
+    public static BlockCodec create(byte id) throws IOException {
+        switch (id) {
+            case DeflateCodec.id:
+                return new DeflateCodec();
+            case Lz4Codec.id:
+                return new Lz4Codec();
+            default:
+                throw new IOException("Unknown codec id " + id);
+        }
+    }
+
+}
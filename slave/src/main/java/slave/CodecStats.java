@@ -0,0 +1,58 @@
+package slave;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Bytes before and after compression and CPU time spent compressing, added up over blocks and files.
+ */
+public class CodecStats {
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    // Properties
+
+    private long rawBytes = 0;
+
+    private long storedBytes = 0;
+
+    private long cpuNanos = 0;
+
+    // Getters
+
+    public synchronized long getRawBytes() { return rawBytes; }
+
+    public synchronized long getStoredBytes() { return storedBytes; }
+
+    public synchronized long getCpuNanos() { return cpuNanos; }
+
+    public synchronized double getRatio() {
+        return storedBytes == 0 ? 1 : (double) rawBytes / storedBytes;
+    }
+
+    // Methods
+
+    public synchronized void add(long rawBytes, long storedBytes, long cpuNanos) {
+        this.rawBytes += rawBytes;
+        this.storedBytes += storedBytes;
+        this.cpuNanos += cpuNanos;
+    }
+
+    public void add(CodecStats other) {
+        add(other.getRawBytes(), other.getStoredBytes(), other.getCpuNanos());
+    }
+
+    /**
+     * CPU time of the calling thread, or wall time if the JVM can't measure it.
+     */
+    static long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d -> %d bytes (ratio %.2f) in %d ms CPU",
+            getRawBytes(), getStoredBytes(), getRatio(), getCpuNanos() / 1000000);
+    }
+
+}
@@ -0,0 +1,129 @@
+package slave;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-mapper combiner. Word counts are added up in memory and written as one record
+ * per distinct word, sorted by word.
+ * When the memory used by the table exceeds `memoryBudget`, the partial counts are
+ * spilled to a sorted run next to the output file and merged back in `finish()`.
+ * Only the output file is compressed with `codec`, spills are read back right away.
+ */
+public class Combiner {
+
+    // Properties
+
+    private final String outputFile;
+
+    private final long memoryBudget;
+
+    private final CountTable counts = new CountTable();
+
+    private List<String> spillFiles = new ArrayList<>();
+
+    private final String codec;
+
+    private final CodecStats stats = new CodecStats();
+
+    private long records = 0;
+
+    // Getters
+
+    /**
+     * Sizes of the output file before and after compression, once `finish()` returned.
+     */
+    public CodecStats getStats() { return this.stats; }
+
+    /**
+     * Records of the output file, one per distinct word, once `finish()` returned.
+     */
+    public long getRecords() { return this.records; }
+
+    // Constructors
+
+    public Combiner(String outputFile, long memoryBudget) {
+        this(outputFile, memoryBudget, "none");
+    }
+
+    public Combiner(String outputFile, long memoryBudget, String codec) {
+        this.outputFile = outputFile;
+        this.memoryBudget = memoryBudget;
+        this.codec = codec;
+    }
+
+    // Methods
+
+    /**
+     * Adds `count` to the word made of the bytes in [`start`, `end`) of `buffer`.
+     * Nothing is allocated unless it is the first time the word is seen.
+     */
+    public void add(ByteBuffer buffer, int start, int end, long count) throws IOException {
+        counts.add(buffer, start, end, count);
+
+        if (counts.memoryUsage() >= memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * Writes the combined counts to `outputFile`. The combiner should not be used afterwards.
+     */
+    public void finish() throws IOException {
+        if (spillFiles.isEmpty()) {
+            RecordWriter writer = new RecordWriter(outputFile, BlockCodec.create(codec));
+            try {
+                counts.forEachSorted(writer::write);
+            } finally {
+                writer.close();
+            }
+            stats.add(writer.getStats());
+            records = writer.getRecords();
+            return;
+        }
+
+        if (counts.size() > 0) {
+            spill();
+        }
+
+        RecordWriter writer = new RecordWriter(outputFile, BlockCodec.create(codec));
+        try {
+            RunMerger.merge(spillFiles, writer::write);
+        } finally {
+            writer.close();
+        }
+        stats.add(writer.getStats());
+        records = writer.getRecords();
+
+        spillFiles.forEach(spillFile -> new File(spillFile).delete());
+        spillFiles.clear();
+    }
+
+    /**
+     * Drops the counts and the spills written so far, e.g. when the map is cancelled.
+     */
+    public void discard() {
+        spillFiles.forEach(spillFile -> new File(spillFile).delete());
+        spillFiles.clear();
+        counts.clear();
+    }
+
+    private void spill() throws IOException {
+        String spillFile = outputFile + ".spill" + spillFiles.size();
+        writeSorted(spillFile);
+        spillFiles.add(spillFile);
+
+        counts.clear();
+    }
+
+    private void writeSorted(String fileName) throws IOException {
+        // The keys are already UTF-8, they are written as they are stored
+        try (RecordWriter writer = new RecordWriter(fileName)) {
+            counts.forEachSorted(writer::write);
+        }
+    }
+
+}
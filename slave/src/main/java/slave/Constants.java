@@ -13,6 +13,21 @@ public class Constants {
     static final String machinesFile = basedir + "machines.txt";
     static final String receivedShufflesDir = basedir + "shufflesreceived/";
     static final String reducesDir = basedir + "reduces/";
+    static final String mergesDir = basedir + "merges/";
+    static final String topsDir = basedir + "tops/";
+    static final long combinerMemoryBudget = 64L * 1024 * 1024;
+    // Secret the master sends before any command, copied here by `deploy` with the jar
+    static final String tokenFile = basedir + "daemon.token";
+    static final int daemonPort = 50123;
+    static final int shufflePort = 50124;
+    static final int mergeFactor = 8;
+    // Reducer given in a shuffle for a partition that is already reduced, its run isn't sent
+    static final String skippedReducer = "-";
+    // Threads mapping a split, set with `-D` on the JVM of the daemon, one per processor by default
+    static final String mapThreadsProperty = "slave.mapThreads";
+    static final int mapThreads = Integer.getInteger(mapThreadsProperty, Runtime.getRuntime().availableProcessors());
+    // Milliseconds a reduce waits for its runs, the master gives up on it a task timeout later
+    static final long reduceWaitTimeout = 30L * 60 * 1000;
 
     private Constants() { }
 }
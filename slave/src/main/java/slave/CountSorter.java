@@ -0,0 +1,61 @@
+package slave;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keeps the records of a partition in memory to write them sorted by count, most frequent first,
+ * and by word between equal counts. The master then only has to merge the partitions to get the
+ * results by count. Words are copied in one slab and never decoded.
+ */
+public class CountSorter implements RunMerger.RecordConsumer {
+
+    // Properties
+
+    private byte[] slab = new byte[1 << 16];
+
+    private int slabLength = 0;
+
+    private int[] keyOffsets = new int[1024];
+
+    private int[] keyLengths = new int[1024];
+
+    private long[] counts = new long[1024];
+
+    private int size = 0;
+
+    // Methods
+
+    @Override
+    public void accept(byte[] key, int offset, int length, long value) {
+        if (size == counts.length) {
+            keyOffsets = Arrays.copyOf(keyOffsets, 2 * size);
+            keyLengths = Arrays.copyOf(keyLengths, 2 * size);
+            counts = Arrays.copyOf(counts, 2 * size);
+        }
+        if (slabLength + length > slab.length) {
+            slab = Arrays.copyOf(slab, Math.max(2 * slab.length, slabLength + length));
+        }
+        System.arraycopy(key, offset, slab, slabLength, length);
+        keyOffsets[size] = slabLength;
+        keyLengths[size] = length;
+        counts[size] = value;
+        slabLength += length;
+        size++;
+    }
+
+    public void write(RecordWriter writer) throws IOException {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> counts[a] != counts[b]
+            ? Long.compare(counts[b], counts[a])
+            : CountTable.compare(slab, keyOffsets[a], keyLengths[a], slab, keyOffsets[b], keyLengths[b]));
+
+        for (int i : order) {
+            writer.write(slab, keyOffsets[i], keyLengths[i], counts[i]);
+        }
+    }
+
+}
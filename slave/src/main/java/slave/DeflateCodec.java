@@ -0,0 +1,75 @@
+package slave;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate from the JDK at its fastest level. Compresses better than `Lz4Codec` for more CPU.
+ */
+public class DeflateCodec implements BlockCodec {
+
+    static final byte id = 1;
+    static final String name = "deflate";
+
+    // Properties
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+    private final Inflater inflater = new Inflater(true);
+
+    // Getters
+
+    @Override
+    public byte getId() { return id; }
+
+    @Override
+    public String getName() { return name; }
+
+    // Methods
+
+    @Override
+    public int maxCompressedLength(int length) {
+        // Stored deflate blocks add 5 bytes per 16 KB
+        return length + 5 * (length / 16384 + 1) + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int length, byte[] dst) {
+        deflater.reset();
+        deflater.setInput(src, 0, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished() && size < dst.length) {
+            size += deflater.deflate(dst, size, dst.length - size);
+        }
+        return size;
+    }
+
+    @Override
+    public void decompress(byte[] src, int length, byte[] dst, int rawLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(src, 0, length);
+        try {
+            int size = 0;
+            while (size < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(dst, size, rawLength - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) { break; }
+                size += inflated;
+            }
+            if (size != rawLength) {
+                throw new IOException("Deflate block holds " + size + " bytes instead of " + rawLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt deflate block", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+        inflater.end();
+    }
+
+}
@@ -0,0 +1,195 @@
+package slave;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pure Java implementation of the LZ4 block format: a greedy matcher over a hash table of 4 byte
+ * sequences, without entropy coding. Much cheaper than deflate, meant for links where the CPU has
+ * time to spare but shouldn't become the bottleneck.
+ *
+ * A sequence is a token (literal length and match length nibbles), the extra literal length bytes,
+ * the literals, the little-endian 16 bit offset of the match and the extra match length bytes.
+ * The last sequence only has literals.
+ */
+public class Lz4Codec implements BlockCodec {
+
+    static final byte id = 2;
+    static final String name = "lz4";
+
+    private static final int minMatch = 4;
+
+    // The last match has to start this far from the end, and the last literals have to be this long
+    private static final int matchFindLimit = 12;
+    private static final int lastLiterals = 5;
+
+    private static final int maxOffset = 65535;
+
+    private static final int hashLog = 12;
+
+    // Skip faster through data that doesn't compress
+    private static final int skipTrigger = 6;
+
+    // Properties
+
+    // Position + 1 of the last sequence seen for each hash, 0 for none
+    private final int[] table = new int[1 << hashLog];
+
+    // Getters
+
+    @Override
+    public byte getId() { return id; }
+
+    @Override
+    public String getName() { return name; }
+
+    // Methods
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int length, byte[] dst) {
+        Arrays.fill(table, 0);
+        int anchor = 0;
+        int position = 0;
+        int out = 0;
+        int limit = length - matchFindLimit;
+
+        while (position < limit) {
+            int sequence = readInt(src, position);
+            int hash = hash(sequence);
+            int candidate = table[hash] - 1;
+            table[hash] = position + 1;
+
+            if (candidate < 0 || position - candidate > maxOffset || readInt(src, candidate) != sequence) {
+                position += 1 + ((position - anchor) >>> skipTrigger);
+                continue;
+            }
+
+            // Extend the match backwards over the pending literals, then forwards
+            while (position > anchor && candidate > 0 && src[position - 1] == src[candidate - 1]) {
+                position--;
+                candidate--;
+            }
+            int matchLength = minMatch;
+            int matchLimit = length - lastLiterals;
+            while (position + matchLength < matchLimit && src[position + matchLength] == src[candidate + matchLength]) {
+                matchLength++;
+            }
+
+            out = writeSequence(src, anchor, position - anchor, position - candidate, matchLength, dst, out);
+            position += matchLength;
+            anchor = position;
+        }
+
+        return writeLastLiterals(src, anchor, length - anchor, dst, out);
+    }
+
+    @Override
+    public void decompress(byte[] src, int length, byte[] dst, int rawLength) throws IOException {
+        int in = 0;
+        int out = 0;
+        try {
+            while (true) {
+                int token = src[in++] & 0xFF;
+
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[in++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                if (out + literals > rawLength || in + literals > length) {
+                    throw new IOException("Corrupt lz4 block");
+                }
+                System.arraycopy(src, in, dst, out, literals);
+                in += literals;
+                out += literals;
+
+                if (in == length) { break; }
+
+                int offset = (src[in] & 0xFF) | (src[in + 1] & 0xFF) << 8;
+                in += 2;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[in++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += minMatch;
+
+                int from = out - offset;
+                if (offset == 0 || from < 0 || out + matchLength > rawLength) {
+                    throw new IOException("Corrupt lz4 block");
+                }
+                // The match may overlap the bytes it produces, it is copied forwards byte by byte
+                for (int i = 0; i < matchLength; ++i) {
+                    dst[out + i] = dst[from + i];
+                }
+                out += matchLength;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt lz4 block", e);
+        }
+
+        if (out != rawLength) {
+            throw new IOException("Lz4 block holds " + out + " bytes instead of " + rawLength);
+        }
+    }
+
+    private static int readInt(byte[] buffer, int position) {
+        return (buffer[position] & 0xFF)
+            | (buffer[position + 1] & 0xFF) << 8
+            | (buffer[position + 2] & 0xFF) << 16
+            | (buffer[position + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - hashLog);
+    }
+
+    private static int writeLength(int length, byte[] dst, int out) {
+        while (length >= 255) {
+            dst[out++] = (byte) 255;
+            length -= 255;
+        }
+        dst[out++] = (byte) length;
+        return out;
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literals, int offset, int matchLength,
+            byte[] dst, int out) {
+        int extraMatch = matchLength - minMatch;
+        int token = out++;
+        dst[token] = (byte) (Math.min(literals, 15) << 4 | Math.min(extraMatch, 15));
+        if (literals >= 15) {
+            out = writeLength(literals - 15, dst, out);
+        }
+        System.arraycopy(src, literalStart, dst, out, literals);
+        out += literals;
+
+        dst[out++] = (byte) offset;
+        dst[out++] = (byte) (offset >>> 8);
+        if (extraMatch >= 15) {
+            out = writeLength(extraMatch - 15, dst, out);
+        }
+        return out;
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalStart, int literals, byte[] dst, int out) {
+        dst[out++] = (byte) (Math.min(literals, 15) << 4);
+        if (literals >= 15) {
+            out = writeLength(literals - 15, dst, out);
+        }
+        System.arraycopy(src, literalStart, dst, out, literals);
+        return out + literals;
+    }
+
+}
@@ -0,0 +1,200 @@
+package slave;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Combining map over a range of a file using several threads. The range is cut in sub-ranges ending
+ * on whitespace, each sub-range is tokenized in place and counted by its own `Combiner` on the shared
+ * pool, and the sorted outputs are merged into the map file at the end.
+ *
+ * Interrupting the calling thread cancels the map: the sub-ranges stop at their next check and
+ * `map` throws `InterruptedIOException` once they are done, leaving no file behind.
+ */
+public class ParallelMapper {
+
+    // Sub-ranges smaller than this are not worth a thread
+    private static final long minSubRangeSize = 1024 * 1024;
+
+    // Bytes mapped at a time while looking for the whitespace that ends a sub-range
+    private static final int scanWindow = 64 * 1024;
+
+    // Tokens counted between two checks for cancellation, minus one
+    private static final int cancelCheckMask = 4096 - 1;
+
+    // Shared by every map run of the daemon
+    private static final ForkJoinPool pool = new ForkJoinPool(Constants.mapThreads);
+
+    private static Tokenizer tokenizer = new WhitespaceTokenizer();
+
+    /**
+     * Replaces the tokenizer used by the following map runs.
+     */
+    public static void setTokenizer(Tokenizer tokenizer) {
+        ParallelMapper.tokenizer = tokenizer;
+    }
+
+    // Methods
+
+    /**
+     * Maps `length` bytes of `fileName` from `offset` into `outputFile`, adding the bytes and tokens
+     * read and the records written to `counters`.
+     */
+    public static void map(String fileName, long offset, long length, String outputFile, long memoryBudget,
+            TaskCounters counters) throws IOException {
+        List<long[]> ranges = createSubRanges(fileName, offset, length);
+        if (ranges.size() == 1) {
+            Thread caller = Thread.currentThread();
+            try {
+                long records = mapRange(fileName, ranges.get(0), outputFile, memoryBudget, caller::isInterrupted, counters);
+                counters.addWritten(new File(outputFile).length(), records);
+            } catch (InterruptedIOException | ClosedByInterruptException e) {
+                new File(outputFile).delete();
+                throw new InterruptedIOException("Map of " + fileName + " cancelled");
+            }
+            return;
+        }
+
+        long threadBudget = memoryBudget / ranges.size();
+        List<String> partialFiles = IntStream.range(0, ranges.size())
+            .mapToObj(i -> outputFile + ".part" + i)
+            .collect(Collectors.toList());
+
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        Future<?> future = pool.submit(() -> IntStream.range(0, ranges.size()).parallel().forEach(i -> {
+            try {
+                mapRange(fileName, ranges.get(i), partialFiles.get(i), threadBudget, cancelled::get, counters);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            awaitUninterruptibly(future);
+            partialFiles.forEach(partialFile -> new File(partialFile).delete());
+            throw new InterruptedIOException("Map of " + fileName + " cancelled");
+        } catch (Exception e) {
+            throw new IOException("Parallel map of " + fileName + " failed", e);
+        }
+
+        // Each partial file is sorted, so the merge writes the map file in order
+        RecordWriter writer = new RecordWriter(outputFile);
+        try {
+            RunMerger.merge(partialFiles, writer::write);
+        } finally {
+            writer.close();
+        }
+        counters.addWritten(new File(outputFile).length(), writer.getRecords());
+
+        partialFiles.forEach(partialFile -> new File(partialFile).delete());
+    }
+
+    /**
+     * Maps one sub-range into `outputFile` and returns the number of records written.
+     */
+    private static long mapRange(String fileName, long[] range, String outputFile, long memoryBudget,
+            BooleanSupplier cancelled, TaskCounters counters) throws IOException {
+        Combiner combiner = new Combiner(outputFile, memoryBudget);
+        int[] tokens = { 0 };
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, range[0], range[1]);
+            tokenizer.tokenize(buffer, (bytes, start, end) -> {
+                if ((++tokens[0] & cancelCheckMask) == 0 && cancelled.getAsBoolean()) {
+                    throw new InterruptedIOException();
+                }
+                combiner.add(bytes, start, end, 1);
+            });
+        } catch (IOException e) {
+            combiner.discard();
+            throw e;
+        }
+        combiner.finish();
+        counters.addRead(range[1], tokens[0]);
+        return combiner.getRecords();
+    }
+
+    /**
+     * Waits for `future` to end however it ends, keeping the interrupt status of the caller.
+     */
+    private static void awaitUninterruptibly(Future<?> future) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                future.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (Exception e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cuts the range in up to `Constants.mapThreads` (offset, length) pairs that end on whitespace.
+     */
+    private static List<long[]> createSubRanges(String fileName, long offset, long length) throws IOException {
+        long maxMapSize = Integer.MAX_VALUE;
+        long count = Math.max(1, Math.min(Constants.mapThreads, length / minSubRangeSize));
+        count = Math.max(count, (length + maxMapSize - 1) / maxMapSize);
+        long approxSize = length / count;
+
+        List<long[]> ranges = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long end = offset + length;
+            long start = offset;
+            for (int i = 0; i < count; ++i) {
+                long rangeEnd = i == count - 1
+                    ? end
+                    : alignToWhitespace(channel, Math.max(start, offset + (i + 1) * approxSize), end);
+                ranges.add(new long[] { start, rangeEnd - start });
+                start = rangeEnd;
+            }
+        }
+        return ranges;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * Returns the first position at or after `position` that follows a whitespace byte, or `end`.
+     */
+    private static long alignToWhitespace(FileChannel channel, long position, long end) throws IOException {
+        long start = position - 1;
+        while (start < end) {
+            long size = Math.min(scanWindow, end - start);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            for (int i = 0; i < size; ++i) {
+                if (isWhitespace(window.get(i))) {
+                    return start + i + 1;
+                }
+            }
+            start += size;
+        }
+        return end;
+    }
+
+    private ParallelMapper() { }
+}
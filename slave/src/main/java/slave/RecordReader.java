@@ -0,0 +1,191 @@
+package slave;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads the records written by `RecordWriter`, one block at a time. The word of the current record is
+ * left in the block buffer, so reading a record allocates nothing unless `getKey()` is called.
+ * Compressed blocks are decompressed with the codec named in their header.
+ * A block whose checksum doesn't match or that ends early fails the read with the file name.
+ */
+public class RecordReader implements Closeable {
+
+    // Properties
+
+    private final String fileName;
+
+    private final DataInputStream in;
+
+    private final CRC32C checksum = new CRC32C();
+
+    // Created when a block uses them, by id
+    private final BlockCodec[] codecs = new BlockCodec[Byte.MAX_VALUE + 1];
+
+    private byte[] compressed = null;
+
+    private byte[] block = new byte[RecordWriter.blockSize];
+
+    private ByteBuffer blockBuffer = ByteBuffer.wrap(block);
+
+    private int blockLength = 0;
+
+    private int position = 0;
+
+    private int remainingRecords = 0;
+
+    private int keyOffset = 0;
+
+    private int keyLength = 0;
+
+    private long count = 0;
+
+    // Getters
+
+    /**
+     * Array holding the word of the current record, valid until the next call to `next()`.
+     */
+    public byte[] getKeyBytes() { return this.block; }
+
+    /**
+     * Same array as `getKeyBytes()`, wrapped once per block.
+     */
+    public ByteBuffer getKeyBuffer() { return this.blockBuffer; }
+
+    public int getKeyOffset() { return this.keyOffset; }
+
+    public int getKeyLength() { return this.keyLength; }
+
+    public long getCount() { return this.count; }
+
+    public String getKey() {
+        return new String(block, keyOffset, keyLength, StandardCharsets.UTF_8);
+    }
+
+    // Constructors
+
+    public RecordReader(String fileName) throws IOException {
+        this.fileName = fileName;
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 1 << 16));
+        try {
+            if (in.readInt() != RecordWriter.magic) {
+                throw new IOException(fileName + " is not a record file");
+            }
+        } catch (EOFException e) {
+            in.close();
+            throw new IOException(fileName + " is not a record file", e);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // Methods
+
+    /**
+     * Moves to the next record. Returns false once the file is exhausted.
+     */
+    public boolean next() throws IOException {
+        while (remainingRecords == 0) {
+            if (!readBlock()) { return false; }
+        }
+
+        keyLength = (int) getVarint();
+        keyOffset = position;
+        position += keyLength;
+        if (keyLength < 0 || position > blockLength) {
+            throw new IOException("Malformed record in " + fileName);
+        }
+        count = getVarint();
+        remainingRecords--;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+        for (BlockCodec codec : codecs) {
+            if (codec != null) {
+                codec.close();
+            }
+        }
+    }
+
+    private boolean readBlock() throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+
+        try {
+            int rawLength = in.readInt();
+            int records = in.readInt();
+            byte codecId = in.readByte();
+            if (length < 0 || rawLength < 0 || records < 0 || codecId < 0
+                || (codecId == BlockCodec.noneId && length != rawLength)) {
+                throw new IOException("Malformed block in " + fileName);
+            }
+            if (rawLength > block.length) {
+                block = new byte[rawLength];
+                blockBuffer = ByteBuffer.wrap(block);
+            }
+
+            byte[] data = block;
+            if (codecId != BlockCodec.noneId) {
+                if (compressed == null || compressed.length < length) {
+                    compressed = new byte[Math.max(length, RecordWriter.blockSize)];
+                }
+                data = compressed;
+            }
+            in.readFully(data, 0, length);
+            int expected = in.readInt();
+
+            checksum.reset();
+            checksum.update(data, 0, length);
+            if ((int) checksum.getValue() != expected) {
+                throw new IOException("Checksum mismatch in " + fileName);
+            }
+
+            if (codecId != BlockCodec.noneId) {
+                if (codecs[codecId] == null) {
+                    codecs[codecId] = BlockCodec.create(codecId);
+                }
+                try {
+                    codecs[codecId].decompress(compressed, length, block, rawLength);
+                } catch (IOException e) {
+                    throw new IOException(e.getMessage() + " in " + fileName, e);
+                }
+            }
+
+            blockLength = rawLength;
+            position = 0;
+            remainingRecords = records;
+            return true;
+        } catch (EOFException e) {
+            throw new IOException("Truncated block in " + fileName, e);
+        }
+    }
+
+    private long getVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= blockLength) {
+                throw new IOException("Malformed record in " + fileName);
+            }
+            byte b = block[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) { return value; }
+        }
+        throw new IOException("Malformed record in " + fileName);
+    }
+
+}
@@ -0,0 +1,185 @@
+package slave;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes (word, count) records in the binary format of the map, shuffle and reduce files.
+ *
+ * A file is the `magic` number followed by blocks. Each block is `[int length][int raw length]
+ * [int records][byte codec]`, `length` bytes of records compressed by the codec and the CRC32C of those
+ * bytes. A record is the varint length of the word, its UTF-8 bytes and the varint count, so a `word 1`
+ * line shrinks to the word plus two bytes.
+ * Blocks that don't get smaller with the codec are stored as they are.
+ */
+public class RecordWriter implements Closeable {
+
+    static final int magic = 0x57435232; // "WCR2"
+
+    // Records are buffered until a block is this large
+    static final int blockSize = 64 * 1024;
+
+    // Longest varint of a long
+    private static final int maxVarintLength = 10;
+
+    // Properties
+
+    private final DataOutputStream out;
+
+    private final CRC32C checksum = new CRC32C();
+
+    // Null to store blocks uncompressed
+    private final BlockCodec codec;
+
+    private final CodecStats stats = new CodecStats();
+
+    private byte[] compressed = null;
+
+    private byte[] block = new byte[blockSize];
+
+    private int blockLength = 0;
+
+    private int blockRecords = 0;
+
+    private long records = 0;
+
+    // Getters
+
+    /**
+     * Sizes of the blocks written so far, before and after compression.
+     */
+    public CodecStats getStats() { return this.stats; }
+
+    /**
+     * Records of the blocks written so far, all of them once closed.
+     */
+    public long getRecords() { return this.records; }
+
+    // Constructors
+
+    public RecordWriter(String fileName) throws IOException {
+        this(fileName, null);
+    }
+
+    public RecordWriter(String fileName, BlockCodec codec) throws IOException {
+        this.codec = codec;
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+        out.writeInt(magic);
+    }
+
+    // Methods
+
+    public void write(String word, long count) throws IOException {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        write(bytes, 0, bytes.length, count);
+    }
+
+    public void write(byte[] key, int offset, int length, long count) throws IOException {
+        reserve(length);
+        blockLength = putVarint(block, blockLength, length);
+        System.arraycopy(key, offset, block, blockLength, length);
+        blockLength += length;
+        blockLength = putVarint(block, blockLength, count);
+        blockRecords++;
+    }
+
+    /**
+     * Writes the word made of the bytes in [`start`, `end`) of `buffer`, e.g. a token of a mapped split.
+     */
+    public void write(ByteBuffer buffer, int start, int end, long count) throws IOException {
+        int length = end - start;
+        reserve(length);
+        blockLength = putVarint(block, blockLength, length);
+        for (int i = 0; i < length; ++i) {
+            block[blockLength + i] = buffer.get(start + i);
+        }
+        blockLength += length;
+        blockLength = putVarint(block, blockLength, count);
+        blockRecords++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (blockRecords > 0) {
+                writeBlock();
+            }
+        } finally {
+            out.close();
+            if (codec != null) {
+                codec.close();
+            }
+        }
+    }
+
+    /**
+     * Makes room in the current block for a record with a `length` bytes long word.
+     */
+    private void reserve(int length) throws IOException {
+        int recordSize = 2 * maxVarintLength + length;
+        if (blockRecords > 0 && blockLength + recordSize > blockSize) {
+            writeBlock();
+        }
+        if (recordSize > block.length) {
+            // Only for words longer than a block
+            block = Arrays.copyOf(block, recordSize);
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        byte[] data = block;
+        int length = blockLength;
+        byte codecId = BlockCodec.noneId;
+
+        if (codec != null) {
+            long startTime = CodecStats.cpuTime();
+            int maxLength = codec.maxCompressedLength(blockLength);
+            if (compressed == null || compressed.length < maxLength) {
+                compressed = new byte[maxLength];
+            }
+            int compressedLength = codec.compress(block, blockLength, compressed);
+            if (compressedLength < blockLength) {
+                data = compressed;
+                length = compressedLength;
+                codecId = codec.getId();
+            }
+            stats.add(blockLength, length, CodecStats.cpuTime() - startTime);
+        } else {
+            stats.add(blockLength, blockLength, 0);
+        }
+
+        checksum.reset();
+        checksum.update(data, 0, length);
+
+        out.writeInt(length);
+        out.writeInt(blockLength);
+        out.writeInt(blockRecords);
+        out.writeByte(codecId);
+        out.write(data, 0, length);
+        out.writeInt((int) checksum.getValue());
+
+        records += blockRecords;
+        blockLength = 0;
+        blockRecords = 0;
+    }
+
+    /**
+     * Writes `value` 7 bits at a time, low bits first, and returns the position after it.
+     */
+    private static int putVarint(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+}
@@ -0,0 +1,108 @@
+package slave;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges record files that are sorted by word into a single sorted stream.
+ * Equal words coming from different runs are added together before being handed to the consumer,
+ * so each word is emitted exactly once with the sum of its counts.
+ * Records are grouped by the word itself, never by its hash, so colliding words stay apart.
+ * Words are compared as UTF-8 bytes and are never decoded.
+ */
+public class RunMerger {
+
+    public interface RecordConsumer {
+        /**
+         * Receives the word in [`offset`, `offset + length`) of `key`, valid only during the call.
+         */
+        public void accept(byte[] key, int offset, int length, long value) throws IOException;
+    }
+
+    // Cursor over a single sorted run
+
+    private static class Run {
+
+        final RecordReader reader;
+
+        Run(String fileName) throws IOException {
+            this.reader = new RecordReader(fileName);
+        }
+
+        void close() {
+            try { reader.close(); } catch (Exception e) { }
+        }
+    }
+
+    private static int compare(Run a, Run b) {
+        RecordReader x = a.reader;
+        RecordReader y = b.reader;
+        return CountTable.compare(
+            x.getKeyBytes(), x.getKeyOffset(), x.getKeyLength(),
+            y.getKeyBytes(), y.getKeyOffset(), y.getKeyLength()
+        );
+    }
+
+    // Methods
+
+    /**
+     * Merges `runFiles` into `consumer` and returns the number of records read from them.
+     */
+    public static long merge(List<String> runFiles, RecordConsumer consumer) throws IOException {
+        PriorityQueue<Run> heap = new PriorityQueue<>(Math.max(1, runFiles.size()), RunMerger::compare);
+        List<Run> runs = new ArrayList<>(runFiles.size());
+        long records = 0;
+
+        try {
+            for (String fileName : runFiles) {
+                Run run = new Run(fileName);
+                runs.add(run);
+                if (run.reader.next()) {
+                    heap.add(run);
+                }
+            }
+
+            // The current word is copied, the run it comes from moves on before it is emitted
+            byte[] currentKey = new byte[256];
+            int currentLength = -1;
+            long currentValue = 0;
+            while (!heap.isEmpty()) {
+                Run run = heap.poll();
+                RecordReader reader = run.reader;
+                byte[] key = reader.getKeyBytes();
+                int offset = reader.getKeyOffset();
+                int length = reader.getKeyLength();
+
+                if (currentLength >= 0
+                    && Arrays.equals(currentKey, 0, currentLength, key, offset, offset + length)) {
+                    currentValue += reader.getCount();
+                } else {
+                    if (currentLength >= 0) {
+                        consumer.accept(currentKey, 0, currentLength, currentValue);
+                    }
+                    if (length > currentKey.length) {
+                        currentKey = new byte[Math.max(length, 2 * currentKey.length)];
+                    }
+                    System.arraycopy(key, offset, currentKey, 0, length);
+                    currentLength = length;
+                    currentValue = reader.getCount();
+                }
+                records++;
+                if (reader.next()) {
+                    heap.add(run);
+                }
+            }
+            if (currentLength >= 0) {
+                consumer.accept(currentKey, 0, currentLength, currentValue);
+            }
+            return records;
+        } finally {
+            runs.forEach(Run::close);
+        }
+    }
+
+    private RunMerger() { }
+}
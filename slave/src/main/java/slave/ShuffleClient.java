@@ -0,0 +1,124 @@
+package slave;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sends shuffle files to the `ShuffleServer` of another machine using the framing described there.
+ * One connection is kept open per destination and reused by every shuffle run in this JVM,
+ * which for the daemon means for the whole job.
+ */
+public class ShuffleClient {
+
+    private static final int chunkSize = ShuffleServer.maxChunkLength;
+
+    private static final Map<String, ShuffleClient> clients = new HashMap<>();
+
+    // Properties
+
+    public final String machine;
+
+    private final int port;
+
+    private SocketChannel channel = null;
+
+    private final ByteBuffer header = ByteBuffer.allocate(4);
+
+    private final ByteBuffer chunk = ByteBuffer.allocateDirect(chunkSize);
+
+    // Constructors
+
+    private ShuffleClient(String machine, int port) {
+        this.machine = machine;
+        this.port = port;
+    }
+
+    /**
+     * Returns the shared client for `machine`.
+     */
+    public static ShuffleClient forMachine(String machine) {
+        synchronized (clients) {
+            return clients.computeIfAbsent(machine, m -> new ShuffleClient(m, Constants.shufflePort));
+        }
+    }
+
+    // Methods
+
+    /**
+     * Streams `fileName` to the destination and waits until it has been stored there.
+     * A broken connection is dropped, so the next call opens a new one.
+     */
+    public synchronized void send(String fileName) throws IOException {
+        try {
+            if (channel == null) {
+                channel = SocketChannel.open(new InetSocketAddress(machine, port));
+                sendToken();
+            }
+            sendFile(fileName);
+        } catch (IOException e) {
+            try { channel.close(); } catch (Exception ignored) { }
+            channel = null;
+            throw new IOException("Sending " + fileName + " to " + machine + " failed", e);
+        }
+    }
+
+    /**
+     * Starts the connection with the token of the daemons, which every machine got from `deploy`.
+     */
+    private void sendToken() throws IOException {
+        byte[] token = WorkerDaemon.readToken();
+        header.clear();
+        header.putInt(token.length);
+        header.flip();
+        writeFully(header, ByteBuffer.wrap(token));
+    }
+
+    private void sendFile(String fileName) throws IOException {
+        String name = Paths.get(fileName).getFileName().toString();
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+        header.clear();
+        header.putInt(nameBytes.length);
+        header.flip();
+        writeFully(header, ByteBuffer.wrap(nameBytes));
+
+        try (FileChannel file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            chunk.clear();
+            while (file.read(chunk) > 0) {
+                chunk.flip();
+                header.clear();
+                header.putInt(chunk.remaining());
+                header.flip();
+                writeFully(header, chunk);
+                chunk.clear();
+            }
+        }
+
+        // End of file
+        header.clear();
+        header.putInt(0);
+        header.flip();
+        writeFully(header);
+
+        ByteBuffer reply = ByteBuffer.allocate(1);
+        if (!ShuffleServer.readFully(channel, reply) || reply.get(0) != ShuffleServer.ack) {
+            throw new IOException("No acknowledgement from " + machine);
+        }
+    }
+
+    private void writeFully(ByteBuffer... buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+package slave;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Receives shuffle files sent by `ShuffleClient`s into `Constants.receivedShufflesDir`.
+ * Each connection starts with the token of the daemon and carries any number of files, one after the other:
+ *
+ *     [int tokenLength][token]  ( [int nameLength][name]  ([int chunkLength][chunk])*  [int 0] )*
+ *
+ * Lengths above `maxNameLength` and `maxChunkLength`, names that aren't a plain file name and a wrong
+ * token close the connection.
+ * A file is written as `<name>.part` and renamed once its last chunk arrived, then a single
+ * `ack` byte is sent back, so a reducer never sees a partial run and the sender knows it landed.
+ * Sockets are blocking: a slow disk stops the reads, which fills the TCP window and stalls the sender.
+ */
+public class ShuffleServer implements Runnable {
+
+    static final byte ack = 1;
+
+    static final String partialSuffix = ".part";
+
+    // Longest token or file name accepted
+    static final int maxNameLength = 255;
+
+    static final int maxChunkLength = 1 << 16;
+
+    // Properties
+
+    private final int port;
+
+    private final InetAddress address;
+
+    private final byte[] token;
+
+    private ServerSocketChannel server;
+
+    // Constructors
+
+    /**
+     * Server listening on `address` for senders that know `token`.
+     */
+    public ShuffleServer(int port, InetAddress address, byte[] token) {
+        this.port = port;
+        this.address = address;
+        this.token = token;
+    }
+
+    // Methods
+
+    /**
+     * Binds the port, then starts accepting connections in a background thread.
+     */
+    public void start() throws IOException {
+        Files.createDirectories(Paths.get(Constants.receivedShufflesDir));
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(address, port));
+
+        Thread thread = new Thread(this, "ShuffleServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        System.out.println("[ShuffleServer] Listening on " + address.getHostAddress() + ":" + port);
+
+        while (true) {
+            try {
+                SocketChannel channel = server.accept();
+                Thread thread = new Thread(() -> receive(channel));
+                thread.start();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void receive(SocketChannel channel) {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        try {
+            byte[] sentToken = readName(channel, header);
+            if (sentToken == null || !MessageDigest.isEqual(sentToken, token)) {
+                throw new IOException("Wrong token from " + channel.getRemoteAddress());
+            }
+
+            while (true) {
+                byte[] nameBytes = readName(channel, header);
+                if (nameBytes == null) { return; }
+                String name = new String(nameBytes, StandardCharsets.UTF_8);
+                if (name.isEmpty() || name.contains("/") || name.contains("\\") || name.contains("..")) {
+                    throw new IOException("Illegal file name \"" + name + "\"");
+                }
+
+                receiveFile(channel, name, header);
+
+                ByteBuffer reply = ByteBuffer.allocate(1);
+                reply.put(ack);
+                reply.flip();
+                while (reply.hasRemaining()) {
+                    channel.write(reply);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try { channel.close(); } catch (Exception e) { }
+        }
+    }
+
+    /**
+     * Reads a length of at most `maxNameLength` and as many bytes. Returns null if the connection
+     * was closed before the length.
+     */
+    private static byte[] readName(SocketChannel channel, ByteBuffer header) throws IOException {
+        header.clear();
+        if (!readFully(channel, header)) { return null; }
+        header.flip();
+        int length = header.getInt();
+        if (length <= 0 || length > maxNameLength) {
+            throw new IOException("Illegal name length " + length);
+        }
+
+        ByteBuffer name = ByteBuffer.allocate(length);
+        if (!readFully(channel, name)) {
+            throw new IOException("Connection closed while reading a name");
+        }
+        return name.array();
+    }
+
+    private void receiveFile(SocketChannel channel, String name, ByteBuffer header) throws IOException {
+        Path target = Paths.get(Constants.receivedShufflesDir, name);
+        Path partial = Paths.get(target.toString() + partialSuffix);
+        // The master empties the directory before a new job, possibly while this daemon is up
+        Files.createDirectories(target.getParent());
+
+        try (FileChannel file = FileChannel.open(partial,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            while (true) {
+                header.clear();
+                if (!readFully(channel, header)) {
+                    throw new IOException("Connection closed in the middle of " + name);
+                }
+                header.flip();
+                int chunkLength = header.getInt();
+                if (chunkLength == 0) { break; }
+                if (chunkLength < 0 || chunkLength > maxChunkLength) {
+                    throw new IOException("Illegal chunk length " + chunkLength + " in " + name);
+                }
+
+                long remaining = chunkLength;
+                while (remaining > 0) {
+                    long transferred = file.transferFrom(channel, position, remaining);
+                    if (transferred <= 0) {
+                        throw new IOException("Connection closed in the middle of " + name);
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            }
+        }
+
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Fills `buffer`. Returns false if the connection was closed before the first byte.
+     */
+    static boolean readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        boolean started = false;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                if (!started) { return false; }
+                throw new IOException("Connection closed unexpectedly");
+            }
+            started = true;
+        }
+        return true;
+    }
+
+}
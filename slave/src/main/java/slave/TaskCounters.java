@@ -0,0 +1,64 @@
+package slave;
+
+/**
+ * What a command did on this slave: bytes and records read and written, bytes sent or received
+ * in the shuffle and time spent waiting for input. The daemon sends them back with its reply,
+ * e.g. `OK read=1048576 written=20480 in=180000 out=9000 shuffle=0 wait=0 run=250000000`.
+ */
+public class TaskCounters {
+
+    // Properties
+
+    private long bytesRead = 0;
+
+    private long bytesWritten = 0;
+
+    private long recordsIn = 0;
+
+    private long recordsOut = 0;
+
+    private long shuffleBytes = 0;
+
+    private long waitNanos = 0;
+
+    // Getters
+
+    public synchronized long getBytesRead() { return bytesRead; }
+
+    public synchronized long getBytesWritten() { return bytesWritten; }
+
+    public synchronized long getRecordsIn() { return recordsIn; }
+
+    public synchronized long getRecordsOut() { return recordsOut; }
+
+    public synchronized long getShuffleBytes() { return shuffleBytes; }
+
+    public synchronized long getWaitNanos() { return waitNanos; }
+
+    // Methods
+
+    public synchronized void addRead(long bytes, long records) {
+        this.bytesRead += bytes;
+        this.recordsIn += records;
+    }
+
+    public synchronized void addWritten(long bytes, long records) {
+        this.bytesWritten += bytes;
+        this.recordsOut += records;
+    }
+
+    public synchronized void addShuffle(long bytes) {
+        this.shuffleBytes += bytes;
+    }
+
+    public synchronized void addWait(long nanos) {
+        this.waitNanos += nanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "read=" + bytesRead + " written=" + bytesWritten + " in=" + recordsIn + " out=" + recordsOut
+            + " shuffle=" + shuffleBytes + " wait=" + waitNanos;
+    }
+
+}
@@ -0,0 +1,25 @@
+package slave;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits UTF-8 text into words. Tokens are handed over as byte ranges of the buffer,
+ * without being copied or decoded, so no object is created per token.
+ *
+ * The same class is in `slave` and `sequential`, keep both copies identical apart from the package.
+ */
+public interface Tokenizer {
+
+    public interface TokenConsumer {
+        /**
+         * Receives the bytes in [`start`, `end`) of `buffer` (absolute indexes).
+         */
+        public void accept(ByteBuffer buffer, int start, int end) throws IOException;
+    }
+
+    /**
+     * Tokenizes the bytes between the position and the limit of `buffer`, leaving its position unchanged.
+     */
+    public void tokenize(ByteBuffer buffer, TokenConsumer consumer) throws IOException;
+}
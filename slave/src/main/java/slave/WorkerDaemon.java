@@ -0,0 +1,230 @@
+package slave;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Long running slave. The master connects once and sends one command per line, each command being
+ * the arguments of a one-shot run (e.g. `3 /tmp/user/splits/S0.txt`). The phase runs in this JVM and
+ * the daemon answers `OK` followed by the `TaskCounters` of the phase and its run time in nanoseconds,
+ * or `ERROR <message>`, on the same connection.
+ * `SHUTDOWN` stops the daemon.
+ * A command sent as `TASK <id> <args>` can be stopped from another connection with `CANCEL <id>`,
+ * e.g. the copy of a map that lost against its speculative backup. The thread running it is
+ * interrupted and the phase gives up at its next check, answering `ERROR`.
+ * A phase that fails answers `ERROR` as well, and the daemon keeps serving the other commands and shuffles.
+ *
+ * The daemon only listens on the address the master knows the machine by, and the first line of
+ * every connection must be `AUTH <token>` with the token `deploy` copied to `Constants.tokenFile`.
+ * Files named in commands must be in `Constants.basedir`, except the shared input mapped by mode 5.
+ */
+public class WorkerDaemon {
+
+    static final String shutdownCommand = "SHUTDOWN";
+    static final String taskCommand = "TASK";
+    static final String cancelCommand = "CANCEL";
+    static final String authCommand = "AUTH";
+    static final String okReply = "OK";
+    static final String errorReply = "ERROR";
+
+    // Properties
+
+    private final int port;
+
+    // Null to listen on the address of the local host name
+    private final String address;
+
+    private byte[] token;
+
+    // Threads running the commands sent with a task id
+    private final Map<String, Thread> tasks = new HashMap<>();
+
+    // Constructors
+
+    public WorkerDaemon(int port, String address) {
+        this.port = port;
+        this.address = address;
+    }
+
+    // Methods
+
+    /**
+     * Listens for the master until `SHUTDOWN`. Only throws if the daemon can't start.
+     */
+    public void serve() throws IOException {
+        token = WorkerDaemon.readToken();
+        InetAddress bindAddress = address != null ? InetAddress.getByName(address) : InetAddress.getLocalHost();
+        ServerSocket server = new ServerSocket(port, 50, bindAddress);
+
+        // Other slaves stream their shuffle files to this one while the daemon is up
+        ShuffleServer shuffleServer = new ShuffleServer(Constants.shufflePort, bindAddress, token);
+        shuffleServer.start();
+        System.out.println("[WorkerDaemon] Listening on " + bindAddress.getHostAddress() + ":" + port);
+
+        while (true) {
+            try {
+                Socket socket = server.accept();
+                Thread thread = new Thread(() -> handle(socket));
+                thread.start();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        BufferedReader in = null;
+        PrintWriter out = null;
+
+        try {
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+
+            if (!isAuthorized(in.readLine())) {
+                out.println(errorReply + " Not authorized");
+                return;
+            }
+            out.println(okReply);
+
+            for (String command = in.readLine(); command != null; command = in.readLine()) {
+                if (command.equals(shutdownCommand)) {
+                    out.println(okReply);
+                    System.exit(0);
+                }
+                out.println(execute(command));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try { out.close(); } catch (Exception e) { }
+            try { in.close(); } catch (Exception e) { }
+            try { socket.close(); } catch (Exception e) { }
+        }
+    }
+
+    private String execute(String command) {
+        String[] args = command.trim().split(" ");
+        if (args[0].equals(cancelCommand) && args.length == 2) {
+            cancel(args[1]);
+            return okReply;
+        }
+
+        String taskId = null;
+        if (args[0].equals(taskCommand) && args.length > 2) {
+            taskId = args[1];
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (args[0].equals("4")) {
+            return errorReply + " Daemon is already running";
+        }
+        String error = WorkerDaemon.checkArguments(args);
+        if (error != null) {
+            return errorReply + " " + error;
+        }
+
+        if (taskId != null) {
+            synchronized (tasks) {
+                tasks.put(taskId, Thread.currentThread());
+            }
+        }
+        try {
+            long startTime = System.nanoTime();
+            TaskCounters counters = App.run(args);
+            return okReply + " " + counters + " run=" + (System.nanoTime() - startTime);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return errorReply + " " + WorkerDaemon.describe(e);
+        } finally {
+            if (taskId != null) {
+                synchronized (tasks) {
+                    tasks.remove(taskId);
+                    // A cancel racing with the end of the task must not hit the next command
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    /**
+     * Class and message of `e` on a single line, e.g. `NoSuchFileException: /tmp/user/splits/S0.txt`.
+     */
+    private static String describe(Exception e) {
+        String message = e.getClass().getSimpleName() + (e.getMessage() != null ? ": " + e.getMessage() : "");
+        return message.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Token in `Constants.tokenFile`, the daemon doesn't start without it.
+     */
+    static byte[] readToken() throws IOException {
+        Path tokenFile = Paths.get(Constants.tokenFile);
+        if (!Files.exists(tokenFile)) {
+            throw new IOException("No token in " + tokenFile + ", deploy the jar first");
+        }
+        return new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8).trim().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private boolean isAuthorized(String line) {
+        if (line == null || !line.startsWith(authCommand + " ")) { return false; }
+        byte[] sent = line.substring(authCommand.length() + 1).getBytes(StandardCharsets.UTF_8);
+        // Takes as long whatever the first wrong byte
+        return MessageDigest.isEqual(sent, token);
+    }
+
+    /**
+     * Returns why the phase described by `args` can't run from the daemon, or null if it can.
+     * Map and shuffle files must be in `Constants.basedir`, and partitions, which name the files
+     * of a reduce, must be numbers.
+     */
+    static String checkArguments(String[] args) {
+        switch (args[0]) {
+            case "0":
+            case "1":
+            case "3":
+                if (args.length >= 2 && !WorkerDaemon.isInBasedir(args[1])) {
+                    return "\"" + args[1] + "\" is outside of " + Constants.basedir;
+                }
+                return null;
+            case "2":
+                if (args.length >= 2 && !args[1].matches("[0-9]+")) {
+                    return "Illegal argument \"" + args[1] + "\" for partition.";
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isInBasedir(String fileName) {
+        Path path = Paths.get(fileName).toAbsolutePath().normalize();
+        return path.startsWith(Paths.get(Constants.basedir).toAbsolutePath().normalize());
+    }
+
+    /**
+     * Interrupts the task `taskId` if it is still running. Unknown ids are ignored,
+     * the task may have finished before the cancel arrived.
+     */
+    private void cancel(String taskId) {
+        synchronized (tasks) {
+            Thread thread = tasks.get(taskId);
+            if (thread != null) {
+                System.err.println("[WorkerDaemon] Cancelling " + taskId);
+                thread.interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package slave;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BlockCodecTest {
+
+    // Methods
+
+    @Test
+    public void lz4RoundTrips() throws IOException {
+        roundTrips(new Lz4Codec());
+    }
+
+    @Test
+    public void deflateRoundTrips() throws IOException {
+        roundTrips(new DeflateCodec());
+    }
+
+    @Test
+    public void lz4ShrinksRepetitiveBlocks() {
+        shrinks(new Lz4Codec());
+    }
+
+    @Test
+    public void deflateShrinksRepetitiveBlocks() {
+        shrinks(new DeflateCodec());
+    }
+
+    @Test
+    public void lz4RejectsCorruptBlocks() {
+        rejectsCorruptBlocks(new Lz4Codec());
+    }
+
+    @Test
+    public void deflateRejectsCorruptBlocks() {
+        rejectsCorruptBlocks(new DeflateCodec());
+    }
+
+    @Test
+    public void createFindsTheCodecByNameAndById() throws IOException {
+        assertEquals(null, BlockCodec.create("none"));
+        assertEquals(Lz4Codec.id, BlockCodec.create("lz4").getId());
+        assertEquals(DeflateCodec.id, BlockCodec.create("deflate").getId());
+        assertEquals(Lz4Codec.name, BlockCodec.create(Lz4Codec.id).getName());
+        assertEquals(DeflateCodec.name, BlockCodec.create(DeflateCodec.id).getName());
+        try {
+            BlockCodec.create((byte) 9);
+            fail();
+        } catch (IOException e) { }
+        try {
+            BlockCodec.create("zstd");
+            fail();
+        } catch (IllegalArgumentException e) { }
+    }
+
+    private static void roundTrips(BlockCodec codec) throws IOException {
+        Random random = new Random(42);
+        byte[] words = "la sant\u00E9 publique de la sant\u00E9 publique ".getBytes(StandardCharsets.UTF_8);
+        // Empty, shorter than a match, random and repetitive blocks, and one past the 64 KB offsets
+        int[] lengths = { 0, 1, 5, 12, 13, 100, 4096, RecordWriter.blockSize, 200_000 };
+        for (int length : lengths) {
+            byte[] randomBlock = new byte[length];
+            random.nextBytes(randomBlock);
+            byte[] repetitiveBlock = new byte[length];
+            for (int i = 0; i < length; ++i) {
+                repetitiveBlock[i] = words[i % words.length];
+            }
+            // The codec keeps its buffers from one call to the next
+            assertRoundTrips(codec, randomBlock);
+            assertRoundTrips(codec, repetitiveBlock);
+        }
+        codec.close();
+    }
+
+    private static void assertRoundTrips(BlockCodec codec, byte[] raw) throws IOException {
+        byte[] compressed = new byte[codec.maxCompressedLength(raw.length)];
+        int length = codec.compress(raw, raw.length, compressed);
+        assertTrue(length <= compressed.length);
+
+        byte[] decompressed = new byte[raw.length];
+        codec.decompress(compressed, length, decompressed, raw.length);
+        assertArrayEquals(codec.getName() + " " + raw.length, raw, decompressed);
+    }
+
+    private static void shrinks(BlockCodec codec) {
+        byte[] raw = new byte[RecordWriter.blockSize];
+        Arrays.fill(raw, (byte) 'a');
+        byte[] compressed = new byte[codec.maxCompressedLength(raw.length)];
+        assertTrue(codec.compress(raw, raw.length, compressed) < raw.length / 10);
+        codec.close();
+    }
+
+    private static void rejectsCorruptBlocks(BlockCodec codec) {
+        byte[] raw = "la sant\u00E9 publique de la sant\u00E9 publique de la sant\u00E9 publique"
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = new byte[codec.maxCompressedLength(raw.length)];
+        int length = codec.compress(raw, raw.length, compressed);
+
+        // Cut short, and announcing more bytes than it holds
+        assertFails(codec, compressed, length / 2, raw.length);
+        assertFails(codec, compressed, length, raw.length + 1);
+        codec.close();
+    }
+
+    private static void assertFails(BlockCodec codec, byte[] compressed, int length, int rawLength) {
+        try {
+            codec.decompress(compressed, length, new byte[rawLength + 16], rawLength);
+            fail(codec.getName() + " " + length + " " + rawLength);
+        } catch (IOException e) { }
+    }
+
+}
@@ -0,0 +1,166 @@
+package slave;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Also covers the copy of `CountTable` in `sequential`, which is identical apart from the package.
+ */
+public class CountTableTest {
+
+    // Around the code points where UTF-8 and UTF-16 orders differ
+    private static final String[] words = {
+        "", "a", "ab", "b", "z", "~", "\u007F", "\u0080", "\u00E9", "\u07FF", "\u0800", "\uD7FF",
+        "\uE000", "\uE000a", "\uEFFF", "\uFFFD", "\uFFFF", "\uD800\uDC00", "\uD83D\uDE00", "\uDBFF\uDFFF"
+    };
+
+    // Methods
+
+    @Test
+    public void countsEveryWordThroughSeveralResizes() throws IOException {
+        // Far more words than the initial slots, each followed by an older one, which is often
+        // still in the table being migrated
+        int distinct = 100_000;
+        CountTable table = new CountTable();
+        for (int i = 0; i < distinct; ++i) {
+            add(table, "w" + i, 1);
+            add(table, "w" + i / 2, 2);
+        }
+
+        Map<String, Long> counts = collect(table);
+        assertEquals(distinct, table.size());
+        assertEquals(distinct, counts.size());
+        for (int i = 0; i < distinct; ++i) {
+            assertEquals("w" + i, i < distinct / 2 ? 5L : 1L, (long) counts.get("w" + i));
+        }
+    }
+
+    @Test
+    public void addAllAddsTheCountsOfTheOtherTable() throws IOException {
+        CountTable table = new CountTable();
+        CountTable other = new CountTable();
+        for (int i = 0; i < 10_000; ++i) {
+            add(table, "w" + i, 1);
+            add(other, "w" + (i + 5_000), 2);
+        }
+
+        table.addAll(other);
+
+        Map<String, Long> counts = collect(table);
+        assertEquals(15_000, table.size());
+        assertEquals(1L, (long) counts.get("w0"));
+        assertEquals(3L, (long) counts.get("w5000"));
+        assertEquals(2L, (long) counts.get("w14999"));
+    }
+
+    @Test
+    public void clearRemovesEveryEntry() throws IOException {
+        CountTable table = new CountTable();
+        for (int i = 0; i < 10_000; ++i) {
+            add(table, "w" + i, 1);
+        }
+
+        table.clear();
+        add(table, "w1", 4);
+
+        assertEquals(1, table.size());
+        assertEquals(4L, (long) collect(table).get("w1"));
+    }
+
+    @Test
+    public void memoryUsageCountsBothTablesWhileResizing() {
+        CountTable table = new CountTable();
+        long empty = table.memoryUsage();
+        int words = 0;
+        long before;
+        long after;
+        do {
+            before = table.memoryUsage();
+            add(table, "w" + words++, 1);
+            after = table.memoryUsage();
+        } while (after - before < 4096);
+
+        // The entry arrays double on the add that starts the first resize, which keeps the old slots
+        // next to twice as many new ones
+        int entries = words - 1;
+        assertEquals((4 + 4 + 4 + 8) * entries + 4 * 2 * 2 * entries, after - before);
+
+        table.clear();
+        assertEquals(empty, table.memoryUsage());
+    }
+
+    @Test
+    public void forEachSortedFollowsStringOrder() throws IOException {
+        CountTable table = new CountTable();
+        // Added backwards and twice, so neither the insertion order nor the counts give the order
+        for (int i = words.length - 1; i >= 0; --i) {
+            add(table, words[i], 1);
+            add(table, words[i], i);
+        }
+
+        List<String> sorted = new ArrayList<>();
+        table.forEachSorted((slab, offset, length, count) -> {
+            String word = new String(slab, offset, length, StandardCharsets.UTF_8);
+            assertEquals(word, 1L + Arrays.asList(words).indexOf(word), count);
+            sorted.add(word);
+        });
+
+        List<String> expected = new ArrayList<>(Arrays.asList(words));
+        expected.sort(String::compareTo);
+        assertEquals(expected, sorted);
+    }
+
+    @Test
+    public void compareHasTheSignOfStringCompareTo() {
+        for (String a : words) {
+            for (String b : words) {
+                byte[] x = a.getBytes(StandardCharsets.UTF_8);
+                byte[] y = b.getBytes(StandardCharsets.UTF_8);
+                int expected = Integer.signum(a.compareTo(b));
+                assertEquals(a + " " + b, expected, Integer.signum(CountTable.compare(x, 0, x.length, y, 0, y.length)));
+            }
+        }
+    }
+
+    @Test
+    public void privateUseCharactersSortAfterSupplementaryOnes() {
+        // 0xEE and 0xEF lead bytes against the 0xF0 to 0xF4 ones: greater, unlike their unsigned values
+        for (String bmp : new String[] { "\uE000", "\uEFFF", "\uF000", "\uFFFF" }) {
+            for (String supplementary : new String[] { "\uD800\uDC00", "\uD83D\uDE00", "\uDBFF\uDFFF" }) {
+                byte[] x = bmp.getBytes(StandardCharsets.UTF_8);
+                byte[] y = supplementary.getBytes(StandardCharsets.UTF_8);
+                assertTrue(CountTable.compare(x, 0, x.length, y, 0, y.length) > 0);
+                assertTrue(CountTable.compare(y, 0, y.length, x, 0, x.length) < 0);
+            }
+        }
+        // Below 0xEE the bytes keep their unsigned order
+        byte[] x = "\uD7FF".getBytes(StandardCharsets.UTF_8);
+        byte[] y = "\uD83D\uDE00".getBytes(StandardCharsets.UTF_8);
+        assertTrue(CountTable.compare(x, 0, x.length, y, 0, y.length) < 0);
+    }
+
+    private static void add(CountTable table, String word, long count) {
+        // Offset in a larger buffer, as the tokens of a split are
+        byte[] bytes = ("  " + word + " ").getBytes(StandardCharsets.UTF_8);
+        table.add(ByteBuffer.wrap(bytes), 2, bytes.length - 1, count);
+    }
+
+    private static Map<String, Long> collect(CountTable table) throws IOException {
+        Map<String, Long> counts = new HashMap<>();
+        table.forEach((slab, offset, length, count) ->
+            counts.merge(new String(slab, offset, length, StandardCharsets.UTF_8), count, Long::sum));
+        return counts;
+    }
+
+}
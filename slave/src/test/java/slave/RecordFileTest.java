@@ -0,0 +1,192 @@
+package slave;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * `RecordWriter` and `RecordReader` together, over the binary format of the map, shuffle and reduce files.
+ */
+public class RecordFileTest {
+
+    // Properties
+
+    private Path directory;
+
+    // Methods
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("records");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void roundTripsWithEveryCodec() throws IOException {
+        for (String codec : new String[] { "none", "lz4", "deflate" }) {
+            String fileName = file(codec);
+            List<String> words = new ArrayList<>();
+            List<Long> counts = new ArrayList<>();
+            RecordWriter writer = new RecordWriter(fileName, BlockCodec.create(codec));
+            try {
+                // Enough records for several blocks, a word longer than a block and large counts
+                for (int i = 0; i < 50_000; ++i) {
+                    words.add("mot" + i + "\u00E9");
+                    counts.add((long) i);
+                    writer.write("mot" + i + "\u00E9", i);
+                }
+                StringBuilder longWord = new StringBuilder();
+                while (longWord.length() <= RecordWriter.blockSize) {
+                    longWord.append("publique");
+                }
+                words.add(longWord.toString());
+                counts.add(Long.MAX_VALUE);
+                writer.write(longWord.toString(), Long.MAX_VALUE);
+                byte[] bytes = " sant\u00E9 ".getBytes(StandardCharsets.UTF_8);
+                words.add("sant\u00E9");
+                counts.add(1L);
+                writer.write(ByteBuffer.wrap(bytes), 1, bytes.length - 1, 1);
+            } finally {
+                writer.close();
+            }
+            assertEquals(words.size(), writer.getRecords());
+
+            try (RecordReader reader = new RecordReader(fileName)) {
+                for (int i = 0; i < words.size(); ++i) {
+                    assertTrue(codec, reader.next());
+                    assertEquals(codec, words.get(i), reader.getKey());
+                    assertEquals(codec, (long) counts.get(i), reader.getCount());
+                }
+                assertFalse(reader.next());
+            }
+        }
+    }
+
+    @Test
+    public void readsAFileWithoutRecords() throws IOException {
+        String fileName = file("empty");
+        new RecordWriter(fileName, new Lz4Codec()).close();
+
+        assertEquals(4, Files.size(Path.of(fileName)));
+        try (RecordReader reader = new RecordReader(fileName)) {
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void skipsEmptyBlocks() throws IOException {
+        String fileName = file("blocks");
+        byte[] record = { 1, 'a', 3 };
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(fileName))) {
+            out.writeInt(RecordWriter.magic);
+            writeBlock(out, new byte[0], 0);
+            writeBlock(out, record, 1);
+            writeBlock(out, new byte[0], 0);
+        }
+
+        try (RecordReader reader = new RecordReader(fileName)) {
+            assertTrue(reader.next());
+            assertEquals("a", reader.getKey());
+            assertEquals(3, reader.getCount());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void rejectsABlockWhoseChecksumDoesntMatch() throws IOException {
+        for (String codec : new String[] { "none", "lz4", "deflate" }) {
+            String fileName = file(codec);
+            try (RecordWriter writer = new RecordWriter(fileName, BlockCodec.create(codec))) {
+                for (int i = 0; i < 1000; ++i) {
+                    writer.write("sant\u00E9", i);
+                }
+            }
+            // Flips a bit of the data of the first block, after the magic and the block header
+            try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+                file.seek(4 + 13 + 2);
+                int b = file.read();
+                file.seek(4 + 13 + 2);
+                file.write(b ^ 0x10);
+            }
+
+            assertFails(fileName, "Checksum mismatch");
+        }
+    }
+
+    @Test
+    public void rejectsATruncatedBlock() throws IOException {
+        String fileName = file("truncated");
+        try (RecordWriter writer = new RecordWriter(fileName)) {
+            writer.write("sant\u00E9", 1);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.setLength(file.length() - 2);
+        }
+
+        assertFails(fileName, "Truncated block");
+    }
+
+    @Test
+    public void rejectsAFileWithoutTheMagic() throws IOException {
+        String fileName = file("text");
+        Files.write(Path.of(fileName), "sant\u00E9 1\n".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            new RecordReader(fileName).close();
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("not a record file"));
+        }
+    }
+
+    private String file(String name) {
+        return directory.resolve(name + ".txt").toString();
+    }
+
+    private static void writeBlock(DataOutputStream out, byte[] data, int records) throws IOException {
+        CRC32C checksum = new CRC32C();
+        checksum.update(data, 0, data.length);
+        out.writeInt(data.length);
+        out.writeInt(data.length);
+        out.writeInt(records);
+        out.writeByte(BlockCodec.noneId);
+        out.write(data);
+        out.writeInt((int) checksum.getValue());
+    }
+
+    private static void assertFails(String fileName, String message) throws IOException {
+        try (RecordReader reader = new RecordReader(fileName)) {
+            while (reader.next()) { }
+            fail(fileName);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+            assertTrue(e.getMessage(), e.getMessage().endsWith(fileName));
+        }
+    }
+
+}
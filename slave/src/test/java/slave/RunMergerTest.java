@@ -0,0 +1,76 @@
+package slave;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RunMergerTest {
+
+    // Properties
+
+    private Path directory;
+
+    // Methods
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("runs");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void mergesRunsInStringOrderAddingEqualWords() throws IOException {
+        List<String> runs = Arrays.asList(
+            run("a", "de", "la", "\uD83D\uDE00"),
+            run("b", "la", "sant\u00E9", "\uE000"),
+            run(),
+            run("de", "la", "z", "\uD83D\uDE00", "\uE000"));
+
+        List<String> merged = new ArrayList<>();
+        long records = RunMerger.merge(runs, (key, offset, length, value) ->
+            merged.add(new String(key, offset, length, StandardCharsets.UTF_8) + " " + value));
+
+        assertEquals(13, records);
+        assertEquals(Arrays.asList(
+            "a 1", "b 1", "de 3", "la 7", "sant\u00E9 3", "z 3", "\uD83D\uDE00 8", "\uE000 9"), merged);
+    }
+
+    @Test
+    public void mergesNoRuns() throws IOException {
+        assertEquals(0, RunMerger.merge(new ArrayList<>(), (key, offset, length, value) -> {
+            throw new AssertionError();
+        }));
+    }
+
+    /**
+     * Run of `words`, which are sorted, the i-th one counted i + 1 times.
+     */
+    private String run(String... words) throws IOException {
+        String fileName = directory.resolve("run" + directory.toFile().list().length + ".txt").toString();
+        try (RecordWriter writer = new RecordWriter(fileName, new Lz4Codec())) {
+            for (int i = 0; i < words.length; ++i) {
+                writer.write(words[i], i + 1);
+            }
+        }
+        return fileName;
+    }
+
+}
@@ -0,0 +1,76 @@
+package slave;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Also covers the copy of `WhitespaceTokenizer` in `sequential`, which is identical apart from the package.
+ */
+public class WhitespaceTokenizerTest {
+
+    // Methods
+
+    @Test
+    public void splitsOnTheCharactersScannerSplitsOn() throws IOException {
+        for (int c = 0; c < Character.MAX_CODE_POINT; ++c) {
+            if (c <= 0xFFFF && Character.isSurrogate((char) c)) { continue; }
+            String separator = new String(Character.toChars(c));
+            List<String> expected = Character.isWhitespace(c)
+                ? Arrays.asList("a", "b")
+                : Arrays.asList("a" + separator + "b");
+            assertEquals(Integer.toHexString(c), expected, tokenize("a" + separator + "b"));
+        }
+    }
+
+    @Test
+    public void skipsLeadingTrailingAndRepeatedWhitespace() throws IOException {
+        assertEquals(Arrays.asList("un", "deux", "trois"), tokenize(" \t\nun \u2003\r\n deux\u3000\u1680trois\u2029"));
+        assertEquals(Arrays.asList(), tokenize(""));
+        assertEquals(Arrays.asList(), tokenize("\u2003 \u3000\t"));
+        assertEquals(Arrays.asList("sant\u00E9"), tokenize("sant\u00E9"));
+    }
+
+    @Test
+    public void keepsNoBreakSpacesInsideWords() throws IOException {
+        // U+00A0, U+2007 and U+202F aren't whitespace for `Character.isWhitespace`
+        assertEquals(Arrays.asList("a\u00A0b\u2007c\u202Fd"), tokenize("a\u00A0b\u2007c\u202Fd"));
+    }
+
+    @Test
+    public void keepsASequenceCutByTheEndOfTheBufferInTheLastToken() throws IOException {
+        // The first two bytes of U+2003 at the limit are not enough to make it whitespace
+        byte[] bytes = { 'a', (byte) 0xE2, (byte) 0x80, (byte) 0x83 };
+        List<Integer> ends = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.limit(3);
+        new WhitespaceTokenizer().tokenize(buffer, (b, start, end) -> ends.add(end));
+        assertEquals(Arrays.asList(3), ends);
+    }
+
+    @Test
+    public void startsAtThePositionOfTheBuffer() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap("skipped kept".getBytes(StandardCharsets.UTF_8));
+        buffer.position(4);
+        List<String> tokens = new ArrayList<>();
+        new WhitespaceTokenizer().tokenize(buffer, (b, start, end) ->
+            tokens.add(new String(b.array(), start, end - start, StandardCharsets.UTF_8)));
+        assertEquals(Arrays.asList("ped", "kept"), tokens);
+    }
+
+    private static List<String> tokenize(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        List<String> tokens = new ArrayList<>();
+        new WhitespaceTokenizer().tokenize(ByteBuffer.wrap(bytes), (buffer, start, end) ->
+            tokens.add(new String(bytes, start, end - start, StandardCharsets.UTF_8)));
+        return tokens;
+    }
+
+}